@@ -1,5 +1,6 @@
 package eu.nimble.core.infrastructure.identity.clients;
 
+import eu.nimble.core.infrastructure.identity.entity.dto.PublishedItemPage;
 import eu.nimble.service.model.solr.Search;
 import eu.nimble.service.model.solr.SearchResult;
 import eu.nimble.service.model.solr.party.PartyType;
@@ -32,6 +33,10 @@ public interface IndexingClient {
     SearchResult searchItem(@RequestBody Search search,
             @RequestHeader(value = "Authorization", required = true) String bearerToken);
 
+    @RequestMapping(method = RequestMethod.POST, value = "/item/search", consumes = "application/json")
+    PublishedItemPage searchPublishedItems(@RequestBody Search search,
+            @RequestHeader(value = "Authorization", required = true) String bearerToken);
+
     @RequestMapping(method = RequestMethod.DELETE, value = "/item")
     Boolean removeItem(@RequestParam(value = "uri") String uri,
             @RequestHeader(value = "Authorization", required = true) String bearerToken);
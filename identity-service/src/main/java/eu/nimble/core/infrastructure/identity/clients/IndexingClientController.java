@@ -11,7 +11,9 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
@@ -68,6 +70,18 @@ public class IndexingClientController {
         return clients;
     }
 
+    /**
+     * Returns the available clients by name of the index ("nimble" and "federated").
+     */
+    public Map<String, IndexingClient> getNamedClients() {
+        Map<String, IndexingClient> namedClients = new LinkedHashMap<>();
+        namedClients.put("nimble", getNimbleIndexClient());
+        if (federatedIndexEnabled) {
+            namedClients.put("federated", getFederatedIndexClient());
+        }
+        return namedClients;
+    }
+
     private IndexingClient createIndexingClient(String url) {
         return HystrixFeign.builder().contract(new SpringMvcContract())
                 .encoder(new JacksonEncoder())
@@ -1,5 +1,6 @@
 package eu.nimble.core.infrastructure.identity.clients;
 
+import eu.nimble.core.infrastructure.identity.entity.dto.PublishedItemPage;
 import eu.nimble.service.model.solr.Search;
 import eu.nimble.service.model.solr.SearchResult;
 import eu.nimble.service.model.solr.party.PartyType;
@@ -33,6 +34,11 @@ public class IndexingClientFallback implements IndexingClient {
         return null;
     }
 
+    @Override
+    public PublishedItemPage searchPublishedItems(Search search, String bearerToken) {
+        return null;
+    }
+
     @Override
     public Boolean removeItem(String uri,String bearerToken) {
         return false;
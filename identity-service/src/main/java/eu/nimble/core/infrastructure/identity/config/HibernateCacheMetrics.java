@@ -0,0 +1,51 @@
+package eu.nimble.core.infrastructure.identity.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exposes hit and miss counts of the second level and query cache of Hibernate via the metrics endpoint. Requires
+ * statistics to be enabled (hibernate.generate_statistics).
+ */
+@Component
+public class HibernateCacheMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.hibernate.";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (statistics.isStatisticsEnabled() == false)
+            return Collections.emptyList();
+
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+            String prefix = METRIC_PREFIX + region + ".";
+            addMetrics(metrics, prefix, regionStatistics.getHitCount(), regionStatistics.getMissCount());
+            metrics.add(new Metric<>(prefix + "size", regionStatistics.getElementCountInMemory()));
+        }
+        addMetrics(metrics, METRIC_PREFIX + "query.", statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, String prefix, long hits, long misses) {
+        metrics.add(new Metric<>(prefix + "hit", hits));
+        metrics.add(new Metric<>(prefix + "miss", misses));
+        metrics.add(new Metric<>(prefix + "hit.ratio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)));
+    }
+}
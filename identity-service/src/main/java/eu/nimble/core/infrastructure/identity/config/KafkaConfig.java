@@ -17,8 +17,7 @@ import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Created by Johannes Innerbichler on 27.09.18.
@@ -27,6 +26,9 @@ import java.util.Map;
 @EnableKafka
 public class KafkaConfig {
 
+    // identifies this process, e.g. as origin of broadcasts and owner of job leases, hence unique per start
+    public static final String INSTANCE_ID = UUID.randomUUID().toString();
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
@@ -36,6 +38,11 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String consumerGroupId;
 
+    // stable name of the cache invalidation group of this replica (e.g. the name of a stateful set pod), which must
+    // not be shared with other replicas. A group of the process is used if not set.
+    @Value("${nimble.cache-invalidation.group:}")
+    private String cacheInvalidationGroup;
+
     @Bean
     public Map<String, Object> producerConfigs() {
         Map<String, Object> props = new HashMap<>();
@@ -87,6 +94,32 @@ public class KafkaConfig {
         return factory;
     }
 
+    @Bean
+    public ProducerFactory<String, CacheInvalidation> cacheInvalidationProducerFactory() {
+        return new DefaultKafkaProducerFactory<>(producerConfigs());
+    }
+
+    @Bean
+    public KafkaTemplate<String, CacheInvalidation> cacheInvalidationKafkaTemplate() {
+        return new KafkaTemplate<>(cacheInvalidationProducerFactory());
+    }
+
+    @Bean
+    public ConsumerFactory<String, CacheInvalidation> cacheInvalidationConsumerFactory() {
+        // every replica has to receive all invalidations
+        Map<String, Object> props = new HashMap<>(consumerConfigs());
+        String group = StringUtils.isEmpty(cacheInvalidationGroup) ? INSTANCE_ID : cacheInvalidationGroup;
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, consumerGroupId + ":" + group);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new JsonDeserializer<>(CacheInvalidation.class));
+    }
+
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, CacheInvalidation>> cacheInvalidationsKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, CacheInvalidation> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(cacheInvalidationConsumerFactory());
+        return factory;
+    }
+
     public static class AuthorizedCompanyUpdate {
         private String companyId;
         private String accessToken;
@@ -115,4 +148,55 @@ public class KafkaConfig {
             this.accessToken = accessToken;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Entries to be evicted from the local caches of all replicas.
+     */
+    public static class CacheInvalidation {
+        private String origin;
+        // entity names or collection roles of Hibernate mapped to the changed identifiers
+        private Map<String, Set<String>> entities = new HashMap<>();
+        // ids of users whose roles or tokens changed
+        private Set<String> users = new HashSet<>();
+
+        public CacheInvalidation() {
+        }
+
+        public CacheInvalidation(String origin) {
+            this.origin = origin;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public void setOrigin(String origin) {
+            this.origin = origin;
+        }
+
+        public Map<String, Set<String>> getEntities() {
+            return entities;
+        }
+
+        public void setEntities(Map<String, Set<String>> entities) {
+            this.entities = entities;
+        }
+
+        public Set<String> getUsers() {
+            return users;
+        }
+
+        public void setUsers(Set<String> users) {
+            this.users = users;
+        }
+
+        public void addEntity(String name, Object identifier) {
+            entities.computeIfAbsent(name, key -> new HashSet<>()).add(String.valueOf(identifier));
+        }
+
+        @Override
+        public String toString() {
+            return "CacheInvalidation{origin='" + origin + "', entities=" + entities + ", users=" + users + "}";
+        }
+    }
+}
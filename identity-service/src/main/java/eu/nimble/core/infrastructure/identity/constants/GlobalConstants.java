@@ -7,6 +7,7 @@ package eu.nimble.core.infrastructure.identity.constants;
 public class GlobalConstants {
 
     public static final String PARTY_NAME_STRING = "partyName";
+    public static final String REGISTRATION_DATE_STRING = "registrationDate";
     public static final String ASCENDING_STRING = "asc";
     public static final String DESCENDING_STRING = "desc";
     public static final String JWT_SUBJECT_ATTRIBUTE_STRING = "sub";
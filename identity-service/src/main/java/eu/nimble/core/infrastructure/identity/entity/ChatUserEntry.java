@@ -0,0 +1,52 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Rocket.Chat user registered for an email address. Mirrors the user directory of Rocket.Chat, so that the chat users
+ * of platform members are found without downloading the whole directory.
+ */
+@Entity
+@Table(name = "chat_user_directory")
+public class ChatUserEntry {
+
+    // lower case email address
+    @Id
+    @Column(length = 320)
+    private String email;
+
+    @Column(nullable = false)
+    private String username;
+
+    // time of the last registration or change, entries changed during a synchronization are kept
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updated;
+
+    public ChatUserEntry(String email, String username) {
+        this.email = email;
+        this.username = username;
+        this.updated = new Date();
+    }
+
+    protected ChatUserEntry() {
+        // no-args constructor required by JPA spec
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+        this.updated = new Date();
+    }
+
+    public Date getUpdated() {
+        return updated;
+    }
+}
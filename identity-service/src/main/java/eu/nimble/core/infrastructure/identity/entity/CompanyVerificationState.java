@@ -0,0 +1,96 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import eu.nimble.core.infrastructure.identity.service.AdminService;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Materialized verification state of a company. Derived from the Keycloak roles of the company members and kept up to
+ * date whenever these roles change, so that companies can be listed by state without contacting Keycloak.
+ * A state of null means that none of the members holds a NIMBLE role yet. States which could not be recomputed, e.g.
+ * while Keycloak was unavailable, keep their last value and are marked as stale until recomputed by the backfill. The sort keys of the company are stored
+ * alongside the state in order to page through the companies of a state using the indexes only.
+ */
+@Entity
+@Table(indexes = {@Index(name = "company_verification_state_idx", columnList = "state"),
+        @Index(name = "company_verification_state_name_idx", columnList = "state, sort_name, party_hjid"),
+        @Index(name = "company_verification_state_date_idx", columnList = "state, registration_date, party_hjid")})
+public class CompanyVerificationState implements Serializable {
+
+    @Id
+    @Column(name = "party_hjid")
+    private Long partyHjid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private AdminService.CompanyState state;
+
+    // lower case legal name
+    @Column(name = "sort_name")
+    private String sortName;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "registration_date")
+    private Date registrationDate;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastUpdated;
+
+    // set if the state could not be recomputed after a change, nullable for rows existing before the column
+    private Boolean stale;
+
+    public CompanyVerificationState(Long partyHjid, AdminService.CompanyState state) {
+        this.partyHjid = partyHjid;
+        this.state = state;
+        this.stale = false;
+        this.lastUpdated = new Date();
+    }
+
+    protected CompanyVerificationState() {
+        // no-args constructor required by JPA spec
+    }
+
+    public Long getPartyHjid() {
+        return partyHjid;
+    }
+
+    public AdminService.CompanyState getState() {
+        return state;
+    }
+
+    public void setState(AdminService.CompanyState state) {
+        this.state = state;
+        this.stale = false;
+        this.lastUpdated = new Date();
+    }
+
+    public boolean isStale() {
+        return Boolean.TRUE.equals(stale);
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+
+    public String getSortName() {
+        return sortName;
+    }
+
+    public void setSortName(String sortName) {
+        this.sortName = sortName;
+    }
+
+    public Date getRegistrationDate() {
+        return registrationDate;
+    }
+
+    public void setRegistrationDate(Date registrationDate) {
+        this.registrationDate = registrationDate;
+    }
+
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+}
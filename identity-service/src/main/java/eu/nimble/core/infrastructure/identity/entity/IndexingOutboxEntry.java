@@ -0,0 +1,61 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Pending update of a party in the indexing services. Entries are written whenever a party changes and processed
+ * asynchronously, so that requests do not wait for the indexing services. Multiple entries of the same party are
+ * coalesced into a single update.
+ */
+@Entity
+@Table(indexes = {@Index(name = "indexing_outbox_next_attempt_idx", columnList = "next_attempt, id"),
+        @Index(name = "indexing_outbox_party_idx", columnList = "party_hjid")})
+public class IndexingOutboxEntry {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "party_hjid", nullable = false)
+    private Long partyHjid;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_attempt", nullable = false)
+    private Date nextAttempt;
+
+    private int attempts = 0;
+
+    public IndexingOutboxEntry(Long partyHjid) {
+        this.partyHjid = partyHjid;
+        this.created = new Date();
+        this.nextAttempt = this.created;
+    }
+
+    protected IndexingOutboxEntry() {
+        // no-args constructor required by JPA spec
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getPartyHjid() {
+        return partyHjid;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
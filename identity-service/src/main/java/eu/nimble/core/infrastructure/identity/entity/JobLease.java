@@ -0,0 +1,76 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Lease of a scheduled job (or a shard of it) held by a single replica. A lease is completed once the job has run, so
+ * that the same run is not repeated by other replicas, and can be taken over after its expiry if the replica holding
+ * it failed.
+ */
+@Entity
+@Table(indexes = {@Index(name = "job_lease_until_idx", columnList = "lease_until")})
+public class JobLease implements Persistable<String> {
+
+    @Id
+    @Column(length = 128)
+    private String name;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "lease_until", nullable = false)
+    private Date leaseUntil;
+
+    private boolean completed = false;
+
+    // leases are always inserted, so that concurrent acquisitions fail instead of overwriting each other
+    @Transient
+    private boolean isNew = true;
+
+    public JobLease(String name, String owner, Date leaseUntil) {
+        this.name = name;
+        this.owner = owner;
+        this.leaseUntil = leaseUntil;
+    }
+
+    protected JobLease() {
+        // no-args constructor required by JPA spec
+    }
+
+    @PostLoad
+    @PostPersist
+    @SuppressWarnings("unused")
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public String getId() {
+        return name;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Date getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+}
@@ -0,0 +1,101 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Mail waiting for delivery. Mails are rendered on request and delivered asynchronously, so that requests do not wait
+ * for the mail server. Mails which could not be delivered after several attempts are kept as dead letters.
+ */
+@Entity
+@Table(indexes = {@Index(name = "mail_outbox_next_attempt_idx", columnList = "status, next_attempt, id")})
+public class MailOutboxEntry {
+
+    public enum Status {PENDING, DEAD}
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "sender")
+    private String from;
+
+    // comma separated addresses
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String recipients;
+
+    @Column(length = 1024)
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String text;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status = Status.PENDING;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_attempt", nullable = false)
+    private Date nextAttempt;
+
+    private int attempts = 0;
+
+    @Column(length = 1024)
+    private String lastError;
+
+    public MailOutboxEntry(String from, String[] recipients, String subject, String text) {
+        this.from = from;
+        this.recipients = String.join(",", recipients);
+        this.subject = subject;
+        this.text = text;
+        this.created = new Date();
+        this.nextAttempt = this.created;
+    }
+
+    protected MailOutboxEntry() {
+        // no-args constructor required by JPA spec
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String[] getRecipients() {
+        return recipients.split(",");
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
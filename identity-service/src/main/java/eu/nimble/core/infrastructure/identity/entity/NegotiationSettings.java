@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.gson.annotations.SerializedName;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -16,6 +18,8 @@ import java.util.List;
  * Company wide business settings
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @JsonInclude
 @Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"id", "company_hjid"})})
 public class NegotiationSettings implements Serializable {
@@ -0,0 +1,131 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import javax.persistence.*;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Background job for reindexing all parties. The id of the last processed party is stored as checkpoint after each
+ * chunk, so that an interrupted job can be resumed. Counters are kept per index.
+ */
+@Entity
+public class ReindexJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date started;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date finished;
+
+    private String message;
+
+    // id of the last processed party
+    private Long checkpoint = 0L;
+
+    private long total;
+
+    private long processed;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "reindex_job_indexed")
+    private Map<String, Long> indexed = new HashMap<>();
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "reindex_job_errors")
+    private Map<String, Long> errors = new HashMap<>();
+
+    public ReindexJob(long total) {
+        this.status = Status.RUNNING;
+        this.started = new Date();
+        this.total = total;
+    }
+
+    protected ReindexJob() {
+        // no-args constructor required by JPA spec
+    }
+
+    public void checkpoint(Long lastPartyHjid, int processedParties) {
+        this.checkpoint = lastPartyHjid;
+        this.processed += processedParties;
+    }
+
+    public void count(String index, long indexedParties, long failedParties) {
+        indexed.merge(index, indexedParties, Long::sum);
+        errors.merge(index, failedParties, Long::sum);
+    }
+
+    public void complete() {
+        this.status = Status.COMPLETED;
+        this.finished = new Date();
+    }
+
+    public void fail(String message) {
+        this.status = Status.FAILED;
+        this.finished = new Date();
+        this.message = message;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    public Date getFinished() {
+        return finished;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public Map<String, Long> getIndexed() {
+        return indexed;
+    }
+
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of indexed parties per second for each index.
+     */
+    public Map<String, Double> getThroughput() {
+        long end = finished != null ? finished.getTime() : System.currentTimeMillis();
+        double seconds = Math.max(1, end - started.getTime()) / 1000.0;
+        Map<String, Double> throughput = new HashMap<>();
+        indexed.forEach((index, count) -> throughput.put(index, count / seconds));
+        return throughput;
+    }
+}
@@ -0,0 +1,57 @@
+package eu.nimble.core.infrastructure.identity.entity;
+
+import javax.persistence.*;
+
+/**
+ * Entry of the inverted index of product publish subscriptions. Maps a subscribed company or category to a subscriber
+ * party, so that the subscribers of published items can be looked up without loading the subscriptions of all parties.
+ * The entries are derived from the subscriptions of a party and replaced whenever they change.
+ */
+@Entity
+@Table(indexes = {@Index(name = "subscription_index_key_idx", columnList = "type, subscribed_key, party_hjid"),
+        @Index(name = "subscription_index_party_idx", columnList = "party_hjid")})
+public class SubscriptionIndexEntry {
+
+    public enum Type {COMPANY, CATEGORY}
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Type type;
+
+    // id of the subscribed company or uri of the subscribed category
+    @Column(name = "subscribed_key", length = 1024, nullable = false)
+    private String subscribedKey;
+
+    @Column(name = "party_hjid", nullable = false)
+    private Long partyHjid;
+
+    public SubscriptionIndexEntry(Type type, String subscribedKey, Long partyHjid) {
+        this.type = type;
+        this.subscribedKey = subscribedKey;
+        this.partyHjid = partyHjid;
+    }
+
+    protected SubscriptionIndexEntry() {
+        // no-args constructor required by JPA spec
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSubscribedKey() {
+        return subscribedKey;
+    }
+
+    public Long getPartyHjid() {
+        return partyHjid;
+    }
+}
@@ -1,6 +1,8 @@
 package eu.nimble.core.infrastructure.identity.entity;
 
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnDefault;
 
 import java.io.Serializable;
@@ -11,6 +13,8 @@ import javax.persistence.*;
  * Entity storing user credentials.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class UaaUser implements Serializable {
 
     @Id
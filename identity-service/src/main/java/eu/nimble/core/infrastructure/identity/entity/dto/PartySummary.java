@@ -0,0 +1,57 @@
+package eu.nimble.core.infrastructure.identity.entity.dto;
+
+import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Lightweight projection of a party, containing only the fields required for listing parties.
+ */
+public class PartySummary {
+
+    private final Long hjid;
+
+    private final String companyID;
+
+    private final Map<NimbleConfigurationProperties.LanguageID, String> names = new EnumMap<>(NimbleConfigurationProperties.LanguageID.class);
+
+    private final Date creationDate;
+
+    private final boolean deleted;
+
+    private final int memberCount;
+
+    public PartySummary(Long hjid, String companyID, Date creationDate, boolean deleted, int memberCount) {
+        this.hjid = hjid;
+        this.companyID = companyID;
+        this.creationDate = creationDate;
+        this.deleted = deleted;
+        this.memberCount = memberCount;
+    }
+
+    public Long getHjid() {
+        return hjid;
+    }
+
+    public String getCompanyID() {
+        return companyID;
+    }
+
+    public Map<NimbleConfigurationProperties.LanguageID, String> getNames() {
+        return names;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+}
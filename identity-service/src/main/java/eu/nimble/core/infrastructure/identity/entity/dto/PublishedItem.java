@@ -0,0 +1,95 @@
+package eu.nimble.core.infrastructure.identity.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.*;
+
+/**
+ * Compact view of an item of the index, containing only the fields required for subscription summaries.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PublishedItem {
+
+    /**
+     * Fields of the index to be retrieved.
+     */
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("id", "manufacturerId",
+            "classificationUri", "catalogueId", "manufactuerItemId", "restrictedParties", "permittedParties"));
+
+    private String uri;
+
+    private String manufacturerId;
+
+    private String manufactuerItemId;
+
+    private String catalogueId;
+
+    private Set<String> classificationUri = Collections.emptySet();
+
+    private Set<String> restrictedParties;
+
+    private Set<String> permittedParties;
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    public String getManufacturerId() {
+        return manufacturerId;
+    }
+
+    public void setManufacturerId(String manufacturerId) {
+        this.manufacturerId = manufacturerId;
+    }
+
+    public String getManufactuerItemId() {
+        return manufactuerItemId;
+    }
+
+    public void setManufactuerItemId(String manufactuerItemId) {
+        this.manufactuerItemId = manufactuerItemId;
+    }
+
+    public String getCatalogueId() {
+        return catalogueId;
+    }
+
+    public void setCatalogueId(String catalogueId) {
+        this.catalogueId = catalogueId;
+    }
+
+    public Set<String> getClassificationUri() {
+        return classificationUri;
+    }
+
+    public void setClassificationUri(Set<String> classificationUri) {
+        this.classificationUri = classificationUri == null ? Collections.emptySet() : classificationUri;
+    }
+
+    public Set<String> getRestrictedParties() {
+        return restrictedParties;
+    }
+
+    public void setRestrictedParties(Set<String> restrictedParties) {
+        this.restrictedParties = restrictedParties;
+    }
+
+    public Set<String> getPermittedParties() {
+        return permittedParties;
+    }
+
+    public void setPermittedParties(Set<String> permittedParties) {
+        this.permittedParties = permittedParties;
+    }
+
+    /**
+     * Considers the whitelist/blacklist of the item.
+     */
+    public boolean isVisibleTo(String vatNumber) {
+        return (restrictedParties == null || !restrictedParties.contains(vatNumber)) && (permittedParties == null || permittedParties.contains(vatNumber));
+    }
+}
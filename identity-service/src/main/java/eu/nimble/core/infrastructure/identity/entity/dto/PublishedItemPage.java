@@ -0,0 +1,23 @@
+package eu.nimble.core.infrastructure.identity.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page of an item search of the index, deserialized into {@link PublishedItem}s.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PublishedItemPage {
+
+    private List<PublishedItem> result = new ArrayList<>();
+
+    public List<PublishedItem> getResult() {
+        return result;
+    }
+
+    public void setResult(List<PublishedItem> result) {
+        this.result = result == null ? new ArrayList<>() : result;
+    }
+}
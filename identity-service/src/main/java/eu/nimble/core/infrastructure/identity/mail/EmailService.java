@@ -4,8 +4,10 @@ import com.google.common.base.Strings;
 import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
 import eu.nimble.core.infrastructure.identity.config.message.NimbleMessageCode;
 import eu.nimble.core.infrastructure.identity.entity.CompanyDetailsUpdates;
+import eu.nimble.core.infrastructure.identity.entity.MailOutboxEntry;
 import eu.nimble.core.infrastructure.identity.mail.model.SubscriptionMailModel;
 import eu.nimble.core.infrastructure.identity.mail.model.SubscriptionSummary;
+import eu.nimble.core.infrastructure.identity.repository.MailOutboxRepository;
 import eu.nimble.core.infrastructure.identity.utils.UblUtils;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.AddressType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
@@ -16,8 +18,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
@@ -33,7 +33,7 @@ public class EmailService {
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
 
     @Autowired
-    private JavaMailSender emailSender;
+    private MailOutboxRepository mailOutboxRepository;
 
     @Autowired
     private UblUtils ublUtils;
@@ -44,6 +44,9 @@ public class EmailService {
     @Autowired
     private TemplateEngine textMailTemplateEngine;
 
+    @Autowired
+    private MailTemplateRegistry mailTemplateRegistry;
+
     @Value("${spring.mail.defaultFrom}")
     private String defaultFrom;
 
@@ -68,9 +71,6 @@ public class EmailService {
     @Value("${nimble.frontend.company-details.url}")
     private String companyDetailsUrl;
 
-    @Value("${spring.mail.languages}")
-    private String mailTemplateLanguages;
-
     @Value("${nimble.companyDataUpdateEmail}")
     private String companyDataUpdateEmail;
 
@@ -257,7 +257,6 @@ public class EmailService {
 
     private void send(String[] to, String subject, String template, Context context) {
 
-        SimpleMailMessage mailMessage = new SimpleMailMessage();
         String message = this.textMailTemplateEngine.process(template, context);
 
         if (debug) {
@@ -265,20 +264,12 @@ public class EmailService {
             return;
         }
 
-        mailMessage.setFrom(this.defaultFrom);
-        mailMessage.setTo(to);
-        mailMessage.setSubject(subject);
-        mailMessage.setText(message);
-
-        this.emailSender.send(mailMessage);
+        // delivered in the background by the MailDispatcher
+        this.mailOutboxRepository.save(new MailOutboxEntry(this.defaultFrom, to, subject, message));
     }
 
     private String getTemplateName(String templateName,String language){
-        List<String> languages = Arrays.asList(mailTemplateLanguages.split(","));
-        if(languages.contains(language)){
-            return String.format("%s_%s",templateName,language);
-        }
-        return String.format("%s_%s",templateName,languages.get(0));
+        return mailTemplateRegistry.getTemplateName(templateName, language);
     }
 
     private String getMailSubject(NimbleMessageCode messageCode, String language, List<String> parameters){
@@ -289,9 +280,7 @@ public class EmailService {
      * Returns the {{@link Locale}} for the given language
      * */
     private Locale getLocale(String language){
-        List<String> languages = Arrays.asList(mailTemplateLanguages.split(","));
-        String mailSubjectLanguage = languages.contains(language) ? language :languages.get(0) ;
-        return new Locale(mailSubjectLanguage);
+        return new Locale(mailTemplateRegistry.getLanguage(language));
     }
 
     /**
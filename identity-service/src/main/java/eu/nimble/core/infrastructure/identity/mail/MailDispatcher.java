@@ -0,0 +1,165 @@
+package eu.nimble.core.infrastructure.identity.mail;
+
+import com.google.common.collect.Lists;
+import eu.nimble.core.infrastructure.identity.entity.MailOutboxEntry;
+import eu.nimble.core.infrastructure.identity.repository.MailOutboxRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the mails of the outbox (see {@link MailOutboxEntry}) in the background. Pending mails are split among a
+ * bounded pool of workers, each of which sends its share over a single connection to the mail server. Failed mails
+ * are retried with exponential backoff and kept as dead letters after the maximum number of attempts.
+ */
+@Component
+public class MailDispatcher implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDispatcher.class);
+
+    private static final long MAX_RETRY_DELAY = 3600000;
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    @Value("${nimble.mail.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${nimble.mail.outbox.pool-size:4}")
+    private int poolSize;
+
+    @Value("${nimble.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${nimble.mail.outbox.retry-delay:30000}")
+    private long retryDelay;
+
+    // time an entry is reserved for the replica delivering it
+    @Value("${nimble.mail.outbox.lease:600000}")
+    private long lease;
+
+    @Autowired
+    private MailOutboxRepository outboxRepository;
+
+    @Autowired
+    private JavaMailSender emailSender;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.executor = Executors.newFixedThreadPool(poolSize);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Scheduled(initialDelayString = "${nimble.mail.outbox.interval:1000}", fixedDelayString = "${nimble.mail.outbox.interval:1000}")
+    public void processOutbox() {
+        List<MailOutboxEntry> entries;
+        do {
+            Date now = new Date();
+            entries = outboxRepository.findByStatusAndNextAttemptLessThanEqualOrderByIdAsc(MailOutboxEntry.Status.PENDING, now, new PageRequest(0, batchSize));
+
+            Date leaseUntil = new Date(now.getTime() + lease);
+            List<MailOutboxEntry> claimed = entries.stream()
+                    .filter(entry -> outboxRepository.claim(entry.getId(), entry.getNextAttempt(), leaseUntil) == 1)
+                    .collect(Collectors.toList());
+            if (claimed.isEmpty() == false)
+                dispatch(claimed);
+        } while (entries.size() == batchSize);
+    }
+
+    private void dispatch(List<MailOutboxEntry> entries) {
+        int chunkSize = (entries.size() + poolSize - 1) / poolSize;
+        CompletableFuture.allOf(Lists.partition(entries, chunkSize).stream()
+                .map(chunk -> CompletableFuture.runAsync(() -> send(chunk), executor))
+                .toArray(CompletableFuture[]::new))
+                .join();
+    }
+
+    private void send(List<MailOutboxEntry> entries) {
+        SimpleMailMessage[] messages = entries.stream().map(MailDispatcher::toMailMessage).toArray(SimpleMailMessage[]::new);
+
+        // all messages are sent over the same connection
+        Map<Object, Exception> failures = Collections.emptyMap();
+        try {
+            emailSender.send(messages);
+        } catch (MailSendException ex) {
+            failures = ex.getFailedMessages().isEmpty() ? failAll(messages, ex) : ex.getFailedMessages();
+        } catch (MailException ex) {
+            failures = failAll(messages, ex);
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            MailOutboxEntry entry = entries.get(i);
+            Exception failure = failures.get(messages[i]);
+            try {
+                if (failure == null)
+                    outboxRepository.delete(entry.getId());
+                else
+                    retry(entry, failure);
+            } catch (Exception ex) {
+                logger.error("Error while updating mail {} in outbox", entry.getId(), ex);
+            }
+        }
+    }
+
+    private void retry(MailOutboxEntry entry, Exception failure) {
+        String error = StringUtils.abbreviate(String.valueOf(failure.getMessage()), MAX_ERROR_LENGTH);
+        if (entry.getAttempts() + 1 >= maxAttempts) {
+            logger.error("Giving up sending mail {} to {} after {} attempts", entry.getId(), entry.getRecipients(), entry.getAttempts() + 1, failure);
+            outboxRepository.updateStatus(entry.getId(), MailOutboxEntry.Status.DEAD, error);
+        } else {
+            logger.warn("Failed to send mail {}: {}", entry.getId(), error);
+            long delay = Math.min(retryDelay << entry.getAttempts(), MAX_RETRY_DELAY);
+            outboxRepository.postpone(entry.getId(), new Date(System.currentTimeMillis() + delay), error);
+        }
+    }
+
+    private static Map<Object, Exception> failAll(SimpleMailMessage[] messages, Exception ex) {
+        Map<Object, Exception> failures = new HashMap<>();
+        for (SimpleMailMessage message : messages)
+            failures.put(message, ex);
+        return failures;
+    }
+
+    private static SimpleMailMessage toMailMessage(MailOutboxEntry entry) {
+        SimpleMailMessage mailMessage = new SimpleMailMessage();
+        mailMessage.setFrom(entry.getFrom());
+        mailMessage.setTo(entry.getRecipients());
+        mailMessage.setSubject(entry.getSubject());
+        mailMessage.setText(entry.getText());
+        return mailMessage;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("mail.outbox.pending", outboxRepository.countByStatus(MailOutboxEntry.Status.PENDING)));
+        metrics.add(new Metric<>("mail.outbox.dead", outboxRepository.countByStatus(MailOutboxEntry.Status.DEAD)));
+        return metrics;
+    }
+}
@@ -0,0 +1,92 @@
+package eu.nimble.core.infrastructure.identity.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the language variants of the mail templates once at startup. Every variant is parsed ahead of time, so
+ * that mails are rendered from the cache of the template engine instead of reading and parsing template files.
+ */
+@Component
+public class MailTemplateRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailTemplateRegistry.class);
+
+    private static final String TEMPLATE_LOCATION = "classpath*:templates/mail/*.txt";
+
+    @Autowired
+    private TemplateEngine textMailTemplateEngine;
+
+    @Value("${spring.mail.languages}")
+    private String mailTemplateLanguages;
+
+    private List<String> languages;
+
+    // template names by base name and language
+    private final Map<String, Map<String, String>> templates = new HashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        this.languages = Arrays.stream(mailTemplateLanguages.split(",")).map(String::trim).collect(Collectors.toList());
+
+        Set<String> availableTemplates = new HashSet<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(TEMPLATE_LOCATION))
+            availableTemplates.add(resource.getFilename().replaceAll("\\.txt$", ""));
+
+        Set<String> baseNames = availableTemplates.stream()
+                .filter(name -> name.contains("_") && languages.contains(name.substring(name.lastIndexOf('_') + 1)))
+                .map(name -> name.substring(0, name.lastIndexOf('_')))
+                .collect(Collectors.toSet());
+        for (String baseName : baseNames) {
+            Map<String, String> variants = new HashMap<>();
+            for (String language : languages) {
+                String templateName = String.format("%s_%s", baseName, language);
+                if (availableTemplates.contains(templateName) == false)
+                    templateName = String.format("%s_%s", baseName, languages.get(0));
+                if (availableTemplates.contains(templateName))
+                    variants.put(language, templateName);
+            }
+            templates.put(baseName, variants);
+            variants.values().stream().distinct().forEach(this::precompile);
+        }
+        logger.info("Precompiled {} mail templates for languages {}", templates.size(), languages);
+    }
+
+    /**
+     * Returns the name of the template in the given language or in the default language if not available.
+     */
+    public String getTemplateName(String baseName, String language) {
+        Map<String, String> variants = templates.getOrDefault(baseName, Collections.emptyMap());
+        String templateName = variants.get(getLanguage(language));
+        return templateName != null ? templateName : String.format("%s_%s", baseName, getLanguage(language));
+    }
+
+    /**
+     * Returns the given language if supported by the mail templates or the default language otherwise.
+     */
+    public String getLanguage(String language) {
+        return languages.contains(language) ? language : languages.get(0);
+    }
+
+    private void precompile(String templateName) {
+        // parsed templates are cached before being processed, hence errors due to the missing variables are irrelevant
+        try {
+            textMailTemplateEngine.process(templateName, new Context(), new StringWriter());
+        } catch (Exception ex) {
+            logger.debug("Template {} not processable without variables", templateName, ex);
+        }
+    }
+}
@@ -24,7 +24,9 @@ public class ThymeleafConfig {
         templateResolver.setTemplateMode(TemplateMode.TEXT);
         templateResolver.setCharacterEncoding("UTF8");
         templateResolver.setCheckExistence(true);
-        templateResolver.setCacheable(false);
+        // parsed templates are kept in memory, see MailTemplateRegistry
+        templateResolver.setCacheable(true);
+        templateResolver.setCacheTTLMs(null);
         return templateResolver;
     }
 }
\ No newline at end of file
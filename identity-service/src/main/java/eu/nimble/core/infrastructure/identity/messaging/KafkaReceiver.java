@@ -1,7 +1,11 @@
 package eu.nimble.core.infrastructure.identity.messaging;
 
 import eu.nimble.core.infrastructure.identity.config.KafkaConfig;
+import eu.nimble.core.infrastructure.identity.service.CacheInvalidationService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
@@ -10,8 +14,19 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class KafkaReceiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaReceiver.class);
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
     @KafkaListener(topics = "${nimble.kafka.topics.companyUpdates}", containerFactory = "companyUpdatesKafkaListenerContainerFactory")
         public void receiveCompanyUpdates(ConsumerRecord<String, KafkaConfig.AuthorizedCompanyUpdate> consumerRecord) {
-        System.out.println("Receiver: " + consumerRecord.value().getCompanyId());
+        logger.debug("Receiver: {}", consumerRecord.value().getCompanyId());
+    }
+
+    @KafkaListener(topics = "${nimble.kafka.topics.cacheInvalidations}", containerFactory = "cacheInvalidationsKafkaListenerContainerFactory")
+    public void receiveCacheInvalidations(ConsumerRecord<String, KafkaConfig.CacheInvalidation> consumerRecord) {
+        cacheInvalidationService.evict(consumerRecord.value());
     }
 }
@@ -1,6 +1,9 @@
 package eu.nimble.core.infrastructure.identity.messaging;
 
 import eu.nimble.core.infrastructure.identity.config.KafkaConfig.AuthorizedCompanyUpdate;
+import eu.nimble.core.infrastructure.identity.config.KafkaConfig.CacheInvalidation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -13,15 +16,23 @@ import org.springframework.stereotype.Component;
 @Component
 public class KafkaSender {
 
+    private static final Logger logger = LoggerFactory.getLogger(KafkaSender.class);
+
     @Value("${nimble.kafka.topics.companyUpdates}")
     private String companyUpdatesTopic;
 
     @Value("${nimble.kafka.topics.ratingsUpdates}")
     private String ratingsUpdatesTopic;
 
+    @Value("${nimble.kafka.topics.cacheInvalidations}")
+    private String cacheInvalidationsTopic;
+
     @Autowired
     private KafkaTemplate<String, AuthorizedCompanyUpdate> kafkaTemplate;
 
+    @Autowired
+    private KafkaTemplate<String, CacheInvalidation> cacheInvalidationKafkaTemplate;
+
     public void broadcastCompanyUpdate(String companyID, String accessToken) {
         accessToken = accessToken.replace("Bearer ", "");
         AuthorizedCompanyUpdate update = new AuthorizedCompanyUpdate(companyID, accessToken);
@@ -35,4 +46,9 @@ public class KafkaSender {
         kafkaTemplate.send(ratingsUpdatesTopic, update);
         System.out.println("Message: " + update + " sent to topic: " + ratingsUpdatesTopic);
     }
+
+    public void broadcastCacheInvalidation(CacheInvalidation invalidation) {
+        cacheInvalidationKafkaTemplate.send(cacheInvalidationsTopic, invalidation);
+        logger.debug("Message: {} sent to topic: {}", invalidation, cacheInvalidationsTopic);
+    }
 }
@@ -6,12 +6,10 @@ import eu.nimble.core.infrastructure.identity.entity.UserInvitation;
 import eu.nimble.core.infrastructure.identity.migration.model.CompanyCreationDate;
 import eu.nimble.core.infrastructure.identity.migration.util.OpenStreetMapUtils;
 import eu.nimble.core.infrastructure.identity.repository.*;
+import eu.nimble.core.infrastructure.identity.service.ChatUserDirectory;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
 import eu.nimble.core.infrastructure.identity.service.RocketChatService;
 import eu.nimble.core.infrastructure.identity.system.ControllerUtils;
-import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.list.ChatUser;
-import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.list.ChatUsers;
-import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.list.UserEmail;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.*;
 import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
@@ -67,6 +65,8 @@ public class R17MigrationController {
     @Autowired
     private RocketChatService chatService;
     @Autowired
+    private ChatUserDirectory chatUserDirectory;
+    @Autowired
     private NegotiationSettingsRepository negotiationSettingsRepository;
     @Autowired
     private CertificateRepository certificateRepository;
@@ -130,24 +130,12 @@ public class R17MigrationController {
 
         if (chatService.isChatEnabled()) {
             logger.info("Validating chat service users");
-            ChatUsers chatUsers = chatService.listUsers();
-            List<ChatUser> chatUserList = chatUsers.getUsers();
-            for (ChatUser chatUser : chatUserList) {
-                if (chatUser.getEmails() != null) {
-                    boolean userExists = false;
-                    String emailAddress = null;
-                    for (UserEmail userEmail : chatUser.getEmails()) {
-                        emailAddress = userEmail.getAddress();
-                        UaaUser uaaUser = uaaUserRepository.findOneByUsername(emailAddress);
-                        if (uaaUser != null) {
-                            userExists = true;
-                            break;
-                        }
-                    }
-                    if (!userExists && emailAddress != null) {
-                        logger.error("UaaUser does not exist for user:{}", emailAddress);
-                        chatService.deleteUser(emailAddress);
-                    }
+            chatService.synchronizeDirectory();
+            for (String emailAddress : chatUserDirectory.getUsernames().keySet()) {
+                UaaUser uaaUser = uaaUserRepository.findOneByUsername(emailAddress);
+                if (uaaUser == null) {
+                    logger.error("UaaUser does not exist for user:{}", emailAddress);
+                    chatService.deleteUser(emailAddress);
                 }
             }
         }
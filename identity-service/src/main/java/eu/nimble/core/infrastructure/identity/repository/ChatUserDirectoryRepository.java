@@ -0,0 +1,22 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.ChatUserEntry;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Repository for the local copy of the Rocket.Chat user directory.
+ */
+public interface ChatUserDirectoryRepository extends CrudRepository<ChatUserEntry, String> {
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM ChatUserEntry e WHERE e.email IN :emails AND (e.updated IS NULL OR e.updated < :before)")
+    int deleteByEmailInUpdatedBefore(@Param("emails") Collection<String> emails, @Param("before") Date before);
+}
@@ -0,0 +1,12 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.CompanyVerificationState;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+/**
+ * Repository for materialized verification states of companies.
+ */
+public interface CompanyVerificationStateRepository extends PagingAndSortingRepository<CompanyVerificationState, Long>,
+        JpaSpecificationExecutor<CompanyVerificationState> {
+}
@@ -0,0 +1,46 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.IndexingOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository for pending party index updates.
+ */
+public interface IndexingOutboxRepository extends CrudRepository<IndexingOutboxEntry, Long> {
+
+    List<IndexingOutboxEntry> findByNextAttemptLessThanEqualOrderByIdAsc(Date now, Pageable pageable);
+
+    /**
+     * Reserves the due entries of a party for processing until the given time. Fails if the entries were claimed by
+     * another replica in the meantime.
+     *
+     * @return number of claimed entries
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE IndexingOutboxEntry e SET e.nextAttempt = :leaseUntil " +
+            "WHERE e.partyHjid = :partyHjid AND e.id <= :maxId AND e.nextAttempt <= :now")
+    int claim(@Param("partyHjid") Long partyHjid, @Param("maxId") Long maxId, @Param("now") Date now, @Param("leaseUntil") Date leaseUntil);
+
+    /**
+     * Removes the processed entries of a party. Entries added after the party was read are kept.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM IndexingOutboxEntry e WHERE e.partyHjid = :partyHjid AND e.id <= :maxId")
+    int deleteProcessed(@Param("partyHjid") Long partyHjid, @Param("maxId") Long maxId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE IndexingOutboxEntry e SET e.attempts = e.attempts + 1, e.nextAttempt = :nextAttempt " +
+            "WHERE e.partyHjid = :partyHjid AND e.id <= :maxId")
+    int postpone(@Param("partyHjid") Long partyHjid, @Param("maxId") Long maxId, @Param("nextAttempt") Date nextAttempt);
+}
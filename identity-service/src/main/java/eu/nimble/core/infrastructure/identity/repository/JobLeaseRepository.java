@@ -0,0 +1,46 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.JobLease;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+/**
+ * Repository for leases of scheduled jobs.
+ */
+public interface JobLeaseRepository extends CrudRepository<JobLease, String> {
+
+    /**
+     * Takes over an expired lease of a job which has not been completed.
+     *
+     * @return 1 if the lease was taken over
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE JobLease l SET l.owner = :owner, l.leaseUntil = :leaseUntil WHERE l.name = :name AND l.completed = false AND l.leaseUntil < :now")
+    int takeOver(@Param("name") String name, @Param("owner") String owner, @Param("now") Date now, @Param("leaseUntil") Date leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE JobLease l SET l.leaseUntil = :leaseUntil WHERE l.name = :name AND l.owner = :owner AND l.completed = false")
+    int renew(@Param("name") String name, @Param("owner") String owner, @Param("leaseUntil") Date leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE JobLease l SET l.completed = true WHERE l.name = :name AND l.owner = :owner")
+    int complete(@Param("name") String name, @Param("owner") String owner);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE JobLease l SET l.leaseUntil = :now WHERE l.name = :name AND l.owner = :owner AND l.completed = false")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Date now);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM JobLease l WHERE l.name LIKE :pattern AND l.leaseUntil < :before")
+    int deleteExpired(@Param("pattern") String pattern, @Param("before") Date before);
+}
@@ -0,0 +1,43 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.MailOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository for mails waiting for delivery.
+ */
+public interface MailOutboxRepository extends CrudRepository<MailOutboxEntry, Long> {
+
+    List<MailOutboxEntry> findByStatusAndNextAttemptLessThanEqualOrderByIdAsc(MailOutboxEntry.Status status, Date now, Pageable pageable);
+
+    long countByStatus(MailOutboxEntry.Status status);
+
+    /**
+     * Reserves an entry for delivery until the given time. Fails if the entry was claimed by another replica in the
+     * meantime.
+     *
+     * @return 1 if the entry was claimed
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE MailOutboxEntry e SET e.nextAttempt = :leaseUntil WHERE e.id = :id AND e.nextAttempt = :nextAttempt")
+    int claim(@Param("id") Long id, @Param("nextAttempt") Date nextAttempt, @Param("leaseUntil") Date leaseUntil);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE MailOutboxEntry e SET e.attempts = e.attempts + 1, e.nextAttempt = :nextAttempt, e.lastError = :error WHERE e.id = :id")
+    int postpone(@Param("id") Long id, @Param("nextAttempt") Date nextAttempt, @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE MailOutboxEntry e SET e.attempts = e.attempts + 1, e.status = :status, e.lastError = :error WHERE e.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") MailOutboxEntry.Status status, @Param("error") String error);
+}
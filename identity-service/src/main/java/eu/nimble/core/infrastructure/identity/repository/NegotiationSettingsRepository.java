@@ -3,9 +3,11 @@ package eu.nimble.core.infrastructure.identity.repository;
 import eu.nimble.core.infrastructure.identity.entity.NegotiationSettings;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 /**
@@ -14,8 +16,10 @@ import java.util.List;
 
 public interface NegotiationSettingsRepository extends PagingAndSortingRepository<NegotiationSettings, Long> {
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     NegotiationSettings findOneByCompany(PartyType company);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<NegotiationSettings> findByCompany(PartyType company);
 
     @Modifying
@@ -1,17 +1,23 @@
 package eu.nimble.core.infrastructure.identity.repository;
 
+import eu.nimble.core.infrastructure.identity.service.AdminService;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,7 +25,8 @@ import java.util.List;
  * Repository for parties.
  */
 //@RepositoryRestResource(collectionResourceRel = "party", path = "party-hal")
-public interface PartyRepository extends PagingAndSortingRepository<PartyType, Long>, JpaSpecificationExecutor<PartyType> {
+public interface PartyRepository extends PagingAndSortingRepository<PartyType, Long>, JpaSpecificationExecutor<PartyType>,
+        PartyRepositoryCustom {
 
     @Transactional
     Iterable<PartyType> findAll(Sort sort);
@@ -30,10 +37,35 @@ public interface PartyRepository extends PagingAndSortingRepository<PartyType, L
     @Transactional
     Page<PartyType> findAll(Pageable pageable);
 
+    @Transactional
+    List<PartyType> findByHjidGreaterThanOrderByHjidAsc(Long hjid, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<PartyType> findByHjid(Long hijd);
 
+    @EntityGraph(attributePaths = {"partyName"})
+    @Query(value = "SELECT DISTINCT p FROM PartyType p WHERE p.hjid IN :hjids")
+    List<PartyType> findByHjidIn(@Param("hjids") Collection<Long> hjids);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<PartyType> findByPerson(PersonType person);
 
+    /**
+     * Fetches a party together with its single valued associations and names, as required for the company settings and
+     * the conversion to the index model. Further collections are loaded in batches.
+     */
+    @EntityGraph(attributePaths = {"partyName", "postalAddress", "postalAddress.country", "postalAddress.coordinate",
+            "industryClassificationCode", "purchaseTerms", "metadata"})
+    @Query(value = "SELECT DISTINCT p FROM PartyType p WHERE p.hjid = :hjid")
+    List<PartyType> findWithDetailsByHjid(@Param("hjid") Long hjid);
+
+    /**
+     * Fetches the parties of a person together with their names, as required for the login.
+     */
+    @EntityGraph(attributePaths = {"partyName"})
+    @Query(value = "SELECT DISTINCT p FROM PartyType p JOIN p.person pe WHERE pe = :person")
+    List<PartyType> findWithNamesByPerson(@Param("person") PersonType person);
+
     @Modifying
     @Transactional
     long deleteByHjid(Long hijd);
@@ -49,4 +81,20 @@ public interface PartyRepository extends PagingAndSortingRepository<PartyType, L
 
     @Query(value = "select pt.hjid from document_reference_type drt,trading_preferences tp,party_type pt where drt.id = ?1 and tp.hjid = drt.document_reference_trading_p_0 and pt.sales_terms_party_type_hjid = tp .hjid",nativeQuery = true)
     List<BigInteger> findByTermsAndConditionsDocumentReferenceId(String id);
+
+    @Query(value = "SELECT p FROM PartyType p, CompanyVerificationState s WHERE s.partyHjid = p.hjid AND p.deleted = false AND s.state = :state")
+    List<PartyType> findByVerificationState(@Param("state") AdminService.CompanyState state, Sort sort);
+
+    @Query(value = "SELECT COUNT(p) FROM PartyType p, CompanyVerificationState s WHERE s.partyHjid = p.hjid AND p.deleted = false AND s.state = :state")
+    long countByVerificationState(@Param("state") AdminService.CompanyState state);
+
+    @Query(value = "SELECT p.hjid FROM PartyType p, CompanyVerificationState s WHERE s.partyHjid = p.hjid AND p.deleted = false " +
+            "AND s.state IS NOT NULL AND p.hjid > :after ORDER BY p.hjid")
+    List<Long> findIndexableHjids(@Param("after") Long after, Pageable pageable);
+
+    @Query(value = "SELECT COUNT(p) FROM PartyType p, CompanyVerificationState s WHERE s.partyHjid = p.hjid AND p.deleted = false AND s.state IS NOT NULL")
+    long countIndexable();
+
+    @Query(value = "SELECT p.hjid FROM PartyType p WHERE NOT EXISTS (SELECT s FROM CompanyVerificationState s WHERE s.partyHjid = p.hjid AND s.sortName IS NOT NULL AND (s.stale IS NULL OR s.stale = false))")
+    List<Long> findHjidsWithoutVerificationState();
 }
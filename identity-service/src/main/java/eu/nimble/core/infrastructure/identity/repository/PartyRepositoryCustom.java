@@ -0,0 +1,36 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.dto.PartySummary;
+import eu.nimble.core.infrastructure.identity.service.AdminService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Custom queries for parties, which cannot be expressed as derived or annotated queries.
+ */
+public interface PartyRepositoryCustom {
+
+    /**
+     * Fetches summaries of parties without loading the party entities.
+     *
+     * @param deleted          if set, only parties with the given deleted flag are returned, otherwise only parties with members
+     * @param excludedIds      company ids (party identifications) to be excluded (may be null)
+     * @param creationDateAsc  if set, results are sorted by creation date (nulls last), otherwise by hjid
+     * @return summaries of matching parties
+     */
+    List<PartySummary> findPartySummaries(Boolean deleted, Collection<String> excludedIds, Boolean creationDateAsc);
+
+    /**
+     * Same as {@link #findPartySummaries(Boolean, Collection, Boolean)}, but passes each summary to the consumer while
+     * scrolling through the results instead of collecting them.
+     */
+    void streamPartySummaries(Boolean deleted, Collection<String> excludedIds, Boolean creationDateAsc, Consumer<PartySummary> consumer);
+
+    /**
+     * Passes the company ids (party identifications) of all non-deleted parties in the given verification state to
+     * the consumer while scrolling through the results.
+     */
+    void streamIdentifiersByVerificationState(AdminService.CompanyState state, Consumer<String> consumer);
+}
@@ -0,0 +1,107 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
+import eu.nimble.core.infrastructure.identity.entity.dto.PartySummary;
+import eu.nimble.core.infrastructure.identity.service.AdminService;
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of {@link PartyRepositoryCustom}. Results are scrolled forward-only, so that memory consumption does
+ * not depend on the number of parties.
+ */
+public class PartyRepositoryImpl implements PartyRepositoryCustom {
+
+    private static final int FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PartySummary> findPartySummaries(Boolean deleted, Collection<String> excludedIds, Boolean creationDateAsc) {
+        List<PartySummary> summaries = new ArrayList<>();
+        streamPartySummaries(deleted, excludedIds, creationDateAsc, summaries::add);
+        return summaries;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamPartySummaries(Boolean deleted, Collection<String> excludedIds, Boolean creationDateAsc, Consumer<PartySummary> consumer) {
+
+        boolean hasExclusions = excludedIds != null && excludedIds.isEmpty() == false;
+
+        // one row per party, identification and name
+        StringBuilder jpql = new StringBuilder()
+                .append("SELECT p.hjid, i.ID, m.creationDateItem, p.deleted, ")
+                .append("(SELECT COUNT(pp) FROM PartyType pc JOIN pc.person pp WHERE pc.hjid = p.hjid), nm.languageID, nm.value ")
+                .append("FROM PartyType p LEFT JOIN p.partyIdentification i LEFT JOIN p.metadata m ")
+                .append("LEFT JOIN p.partyName n LEFT JOIN n.name nm ");
+        jpql.append(deleted != null ? "WHERE p.deleted = :deleted " : "WHERE p.person IS NOT EMPTY ");
+        if (hasExclusions)
+            jpql.append("AND NOT EXISTS (SELECT ei FROM PartyType e JOIN e.partyIdentification ei WHERE e.hjid = p.hjid AND ei.ID IN :excludedIds) ");
+
+        // rows of the same party have to be adjacent
+        if (creationDateAsc != null)
+            jpql.append("ORDER BY m.creationDateItem ").append(creationDateAsc ? "ASC" : "DESC").append(" NULLS LAST, p.hjid, i.hjid");
+        else
+            jpql.append("ORDER BY p.hjid, i.hjid");
+
+        Query query = entityManager.createQuery(jpql.toString());
+        if (deleted != null)
+            query.setParameter("deleted", deleted);
+        if (hasExclusions)
+            query.setParameter("excludedIds", excludedIds);
+
+        PartySummary[] current = new PartySummary[1];
+        scroll(query, row -> {
+            Long hjid = (Long) row[0];
+            if (current[0] == null || current[0].getHjid().equals(hjid) == false) {
+                if (current[0] != null)
+                    consumer.accept(current[0]);
+                current[0] = new PartySummary(hjid, (String) row[1], (Date) row[2], Boolean.TRUE.equals(row[3]), ((Number) row[4]).intValue());
+            }
+
+            // first name per language wins
+            NimbleConfigurationProperties.LanguageID languageID = NimbleConfigurationProperties.LanguageID.fromString((String) row[5]);
+            String name = (String) row[6];
+            if (languageID != null && StringUtils.isNotEmpty(name))
+                current[0].getNames().putIfAbsent(languageID, name);
+        });
+        if (current[0] != null)
+            consumer.accept(current[0]);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamIdentifiersByVerificationState(AdminService.CompanyState state, Consumer<String> consumer) {
+        Query query = entityManager.createQuery("SELECT i.ID FROM PartyType p JOIN p.partyIdentification i, CompanyVerificationState s " +
+                "WHERE s.partyHjid = p.hjid AND p.deleted = false AND s.state = :state ORDER BY p.hjid, i.hjid");
+        query.setParameter("state", state);
+        scroll(query, row -> consumer.accept((String) row[0]));
+    }
+
+    private static void scroll(Query query, Consumer<Object[]> rowConsumer) {
+        ScrollableResults results = query.unwrap(org.hibernate.Query.class)
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next())
+                rowConsumer.accept(results.get());
+        } finally {
+            results.close();
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package eu.nimble.core.infrastructure.identity.repository;
 
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.security.access.annotation.Secured;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 //@RepositoryRestResource(collectionResourceRel = "person", path = "person-hal")
 public interface PersonRepository extends PagingAndSortingRepository<PersonType, Long> {
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<PersonType> findByHjid(Long hijd);
+
+    @EntityGraph(attributePaths = {"contact"})
+    List<PersonType> findByHjidIn(Collection<Long> hjids);
 }
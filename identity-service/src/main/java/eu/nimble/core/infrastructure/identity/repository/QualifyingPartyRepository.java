@@ -2,16 +2,22 @@ package eu.nimble.core.infrastructure.identity.repository;
 
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.QualifyingPartyType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 public interface QualifyingPartyRepository extends PagingAndSortingRepository<QualifyingPartyType, Long> {
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<QualifyingPartyType> findByHjid(Long hijd);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    @EntityGraph(attributePaths = {"businessClassificationScheme"})
     List<QualifyingPartyType> findByParty(PartyType party);
 
     @Modifying
@@ -0,0 +1,14 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.ReindexJob;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+/**
+ * Repository for reindex jobs.
+ */
+public interface ReindexJobRepository extends CrudRepository<ReindexJob, Long> {
+
+    List<ReindexJob> findByStatus(ReindexJob.Status status);
+}
@@ -0,0 +1,31 @@
+package eu.nimble.core.infrastructure.identity.repository;
+
+import eu.nimble.core.infrastructure.identity.entity.SubscriptionIndexEntry;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for the inverted index of product publish subscriptions.
+ */
+public interface SubscriptionIndexRepository extends CrudRepository<SubscriptionIndexEntry, Long> {
+
+    List<SubscriptionIndexEntry> findByPartyHjid(Long partyHjid);
+
+    /**
+     * Retrieves the parties of the given shard subscribed to any of the given companies or categories.
+     */
+    @Query(value = "SELECT DISTINCT e.partyHjid FROM SubscriptionIndexEntry e WHERE e.type = :type AND e.subscribedKey IN :keys AND MOD(e.partyHjid, :shards) = :shard")
+    List<Long> findSubscribers(@Param("type") SubscriptionIndexEntry.Type type, @Param("keys") Collection<String> keys,
+                               @Param("shards") long shards, @Param("shard") long shard);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM SubscriptionIndexEntry e WHERE e.partyHjid = :partyHjid")
+    int deleteByPartyHjid(@Param("partyHjid") Long partyHjid);
+}
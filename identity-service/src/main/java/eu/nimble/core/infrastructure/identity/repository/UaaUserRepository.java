@@ -4,11 +4,15 @@ import eu.nimble.core.infrastructure.identity.entity.UaaUser;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,15 +23,24 @@ import java.util.List;
 public interface UaaUserRepository extends PagingAndSortingRepository<UaaUser, Long> {
     Page<UaaUser> findAll(Pageable pageable);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<UaaUser> findByUsername(String username);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     UaaUser findOneByUsername(String username);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     UaaUser findByExternalID(String externalId);
 
+    @EntityGraph(attributePaths = {"ublPerson", "ublPerson.contact"})
+    UaaUser findWithPersonByExternalID(String externalId);
+
     @Modifying
     @Transactional
     long deleteByUblPerson(PersonType ublPerson);
 
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     List<UaaUser> findByUblPerson(PersonType ublPerson);
+
+    List<UaaUser> findByUblPersonIn(Collection<PersonType> ublPersons);
 }
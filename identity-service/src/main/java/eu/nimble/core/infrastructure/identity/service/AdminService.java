@@ -3,6 +3,7 @@ package eu.nimble.core.infrastructure.identity.service;
 import eu.nimble.core.infrastructure.identity.clients.IndexingClient;
 import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
 import eu.nimble.core.infrastructure.identity.constants.GlobalConstants;
+import eu.nimble.core.infrastructure.identity.entity.CompanyVerificationState;
 import eu.nimble.core.infrastructure.identity.entity.NegotiationSettings;
 import eu.nimble.core.infrastructure.identity.system.ControllerUtils;
 import eu.nimble.core.infrastructure.identity.entity.UaaUser;
@@ -19,10 +20,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.domain.Specifications;
 import org.springframework.stereotype.Service;
 
-import javax.ws.rs.NotFoundException;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -81,49 +90,24 @@ public class AdminService {
     @Autowired
     private IndexingClientController indexingController;
 
-    //    @Cacheable("unverifiedCompanies")
-    public List<PartyType> queryCompanies(CompanyState companyState) {
-        List<PartyType> resultingCompanies = new ArrayList<>();
-        Iterable<PartyType> allParties = partyRepository.findAllByDeletedIsFalse(new Sort(Sort.Direction.ASC, "hjid"));
-        for (PartyType company : allParties) {
-
-            // collect roles of company members
-            Map<PersonType, List<String>> memberRoles = new HashMap<>();
-            for (PersonType companyMember : company.getPerson()) {
-
-                // collect roles
-                try {
-                    Optional<UaaUser> uaaUser = uaaUserRepository.findByUblPerson(companyMember).stream().findFirst();
-                    if (uaaUser.isPresent()) {
-
-                        // avoid invalid usernames (only emails are allowed)
-                        if (uaaUser.get().getUsername().contains("@") == false)
-                            continue;
-
-                        logger.debug("Fetching roles of user {}", uaaUser.get().getUsername());
-                        List<String> roles = new ArrayList<>(identityService.fetchRoles(uaaUser.get()));
-                        companyMember.setRole(roles);
-                        memberRoles.put(companyMember, roles);
-                    }
-                } catch (NotFoundException ex) {
-                    // ignore
-                } catch (Exception ex) {
-                    logger.error("Error while fetch roles of user", ex);
-                }
-            }
+    @Autowired
+    private PartyIndexingService partyIndexingService;
 
-            // check if unverified check whether at least on member has proper role
-            Set<String> mergedRoles = memberRoles.values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
-            if (mergedRoles.isEmpty() == false && mergedRoles.contains(LEGAL_REPRESENTATIVE_ROLE) == false && companyState.equals(CompanyState.UNVERIFIED)) {
-                resultingCompanies.add(company);
-                continue; // avoid multiple entries in list
-            } else if (mergedRoles.contains(LEGAL_REPRESENTATIVE_ROLE) && companyState.equals(CompanyState.VERIFIED)) {
-                resultingCompanies.add(company);
-                continue; // avoid multiple entries in list
-            }
-        }
+    @Autowired
+    private CompanyVerificationService companyVerificationService;
+
+    @Autowired
+    private SubscriptionIndexService subscriptionIndexService;
+
+    @Autowired
+    private CompanyVerificationStateRepository verificationStateRepository;
+
+    public List<PartyType> queryCompanies(CompanyState companyState) {
+        return partyRepository.findByVerificationState(companyState, new Sort(Sort.Direction.ASC, "hjid"));
+    }
 
-        return resultingCompanies;
+    public long countCompanies(CompanyState companyState) {
+        return partyRepository.countByVerificationState(companyState);
     }
 
     public boolean verifyCompany(Long companyId, String bearer) {
@@ -136,6 +120,7 @@ public class AdminService {
             List<String> roles = new ArrayList<>(keycloakAdmin.getUserRoles(uaaUser.getExternalID()));
             if (roles.contains(INITIAL_REPRESENTATIVE_ROLE)) {
                 keycloakAdmin.addRole(uaaUser.getExternalID(), LEGAL_REPRESENTATIVE_ROLE);
+                companyVerificationService.updateState(company, CompanyState.VERIFIED);
 
                 // send email notification
                 String email = companyMember.getContact().getElectronicMail();
@@ -146,14 +131,7 @@ public class AdminService {
                 }
 
                 //indexing the verified status of the company
-                eu.nimble.service.model.solr.party.PartyType party =  indexingController.getNimbleIndexClient().getParty(company.getHjid().toString(),bearer);
-                if(party != null) {
-                    party.setVerified(true);
-                    List<IndexingClient> indexingClients = indexingController.getClients();
-                    for (IndexingClient indexingClient : indexingClients) {
-                        indexingClient.setParty(party, bearer);
-                    }
-                }
+                partyIndexingService.enqueue(company, bearer);
                 return true;
             }
         }
@@ -161,20 +139,66 @@ public class AdminService {
         return false;
     }
 
-    public List<PartyType> sortCompanies(List<PartyType> partyList, String sortBy, String orderBy) {
-        Comparator<PartyType> p;
+    /**
+     * Retrieves a page of companies with the given state. Paging and sorting are performed on the indexed sort keys of
+     * the materialized verification states. If the id of the last company of the previous page is given, the page is
+     * located via keyset pagination instead of an offset.
+     */
+    public Page<PartyType> queryCompanies(CompanyState companyState, String sortBy, String orderBy, int pageNumber, int pageSize, Long afterPartyId) {
+
+        Sort.Direction direction = GlobalConstants.DESCENDING_STRING.equals(orderBy) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        String sortKey = GlobalConstants.REGISTRATION_DATE_STRING.equals(sortBy) ? "registrationDate" : "sortName";
+        Sort sort = new Sort(direction, sortKey, "partyHjid");
+        PageRequest pageRequest = new PageRequest(pageNumber, pageSize, sort);
+
+        Specification<CompanyVerificationState> inState = inState(companyState);
+        Page<CompanyVerificationState> statePage;
+        CompanyVerificationState lastState = afterPartyId != null ? verificationStateRepository.findOne(afterPartyId) : null;
+        if (lastState != null) {
+            Specification<CompanyVerificationState> afterLast = Specifications.where(inState).and(after(lastState, sortKey, direction));
+            List<CompanyVerificationState> states = verificationStateRepository.findAll(afterLast, new PageRequest(0, pageSize, sort)).getContent();
+            statePage = new PageImpl<>(states, pageRequest, verificationStateRepository.count(inState));
+        } else {
+            statePage = verificationStateRepository.findAll(inState, pageRequest);
+        }
+
+        // fetch parties and restore order of page
+        List<Long> partyIds = statePage.getContent().stream().map(CompanyVerificationState::getPartyHjid).collect(Collectors.toList());
+        Map<Long, PartyType> parties = new HashMap<>();
+        if (partyIds.isEmpty() == false)
+            partyRepository.findByHjidIn(partyIds).forEach(p -> parties.put(p.getHjid(), p));
+        List<PartyType> companies = partyIds.stream().map(parties::get).filter(Objects::nonNull).collect(Collectors.toList());
+
+        return new PageImpl<>(companies, pageRequest, statePage.getTotalElements());
+    }
+
+    private static Specification<CompanyVerificationState> inState(CompanyState companyState) {
+        return (root, query, cb) -> {
+            Subquery<Long> activeParties = query.subquery(Long.class);
+            Root<PartyType> party = activeParties.from(PartyType.class);
+            activeParties.select(party.<Long>get("hjid")).where(cb.isFalse(party.<Boolean>get("deleted")));
+            return cb.and(cb.equal(root.get("state"), companyState), root.<Long>get("partyHjid").in(activeParties));
+        };
+    }
 
-        if (sortBy.equals(GlobalConstants.PARTY_NAME_STRING)) {
-            if(GlobalConstants.DESCENDING_STRING.equals(orderBy)){
-                p = (p1, p2) ->
-                        p2.getPartyName().get(0).getName().getValue().toLowerCase().compareTo(p1.getPartyName().get(0).getName().getValue().toLowerCase());
-            }else {
-                p = (p1, p2) ->
-                        p1.getPartyName().get(0).getName().getValue().toLowerCase().compareTo(p2.getPartyName().get(0).getName().getValue().toLowerCase());
+    private static Specification<CompanyVerificationState> after(CompanyVerificationState last, String sortKey, Sort.Direction direction) {
+        return (root, query, cb) -> {
+            boolean ascending = direction.isAscending();
+            Predicate keyBeyond;
+            Predicate keyEqual;
+            if ("registrationDate".equals(sortKey)) {
+                Path<Date> key = root.get(sortKey);
+                keyBeyond = ascending ? cb.greaterThan(key, last.getRegistrationDate()) : cb.lessThan(key, last.getRegistrationDate());
+                keyEqual = cb.equal(key, last.getRegistrationDate());
+            } else {
+                Path<String> key = root.get(sortKey);
+                keyBeyond = ascending ? cb.greaterThan(key, last.getSortName()) : cb.lessThan(key, last.getSortName());
+                keyEqual = cb.equal(key, last.getSortName());
             }
-            partyList.sort(p);
-        }
-        return partyList;
+            Path<Long> id = root.get("partyHjid");
+            Predicate idBeyond = ascending ? cb.greaterThan(id, last.getPartyHjid()) : cb.lessThan(id, last.getPartyHjid());
+            return cb.or(keyBeyond, cb.and(keyEqual, idBeyond));
+        };
     }
 
     public boolean revertCompany(Long companyId, String bearer) throws Exception {
@@ -322,6 +346,12 @@ public class AdminService {
 
         }
 
+        // delete materialized verification state
+        companyVerificationService.deleteState(company);
+
+        // delete subscription index entries
+        subscriptionIndexService.deleteEntries(company);
+
         // delete party
         partyRepository.delete(company);
     }
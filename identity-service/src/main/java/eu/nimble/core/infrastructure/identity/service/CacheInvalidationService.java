@@ -0,0 +1,217 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.config.KafkaConfig;
+import eu.nimble.core.infrastructure.identity.config.KafkaConfig.CacheInvalidation;
+import eu.nimble.core.infrastructure.identity.messaging.KafkaSender;
+import eu.nimble.core.infrastructure.identity.uaa.UserRoleCache;
+import eu.nimble.core.infrastructure.identity.uaa.UserRolesChangedEvent;
+import org.hibernate.Cache;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the local caches of all replicas consistent. Changes of cached entities (recorded via Hibernate events) and
+ * of user roles are broadcast after commit, other replicas evict the affected entries from their second level cache
+ * and role cache. Cached tokens are kept, since their claims cannot change. Cached queries are dropped as a whole,
+ * since they may refer to any changed entity.
+ */
+@Service
+public class CacheInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationService.class);
+
+    @Value("${nimble.cache-invalidation.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private KafkaSender kafkaSender;
+
+    @Autowired
+    private UserRoleCache userRoleCache;
+
+    private SessionFactoryImplementor sessionFactory;
+
+    // sending must not block committing threads
+    private ExecutorService sender;
+
+    // changes of running transactions
+    private final Map<SessionImplementor, CacheInvalidation> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.sender = Executors.newSingleThreadExecutor();
+
+        EntityChangeListener listener = new EntityChangeListener();
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        sender.shutdown();
+    }
+
+    @EventListener
+    public void onUserRolesChanged(UserRolesChangedEvent event) {
+        CacheInvalidation invalidation = new CacheInvalidation(KafkaConfig.INSTANCE_ID);
+        invalidation.getUsers().add(event.getUserId());
+        broadcast(invalidation);
+    }
+
+    /**
+     * Evicts the entries of an invalidation received from another replica.
+     */
+    public void evict(CacheInvalidation invalidation) {
+        if (invalidation == null || KafkaConfig.INSTANCE_ID.equals(invalidation.getOrigin()))
+            return;
+        logger.debug("Evicting {}", invalidation);
+
+        Cache cache = sessionFactory.getCache();
+        invalidation.getEntities().forEach((name, identifiers) -> {
+            EntityPersister entityPersister = sessionFactory.getEntityPersisters().get(name);
+            CollectionPersister collectionPersister = sessionFactory.getCollectionPersisters().get(name);
+            try {
+                for (String identifier : identifiers) {
+                    if (entityPersister != null)
+                        cache.evictEntity(name, toIdentifier(entityPersister.getIdentifierType(), identifier));
+                    else if (collectionPersister != null)
+                        cache.evictCollection(name, toIdentifier(collectionPersister.getKeyType(), identifier));
+                }
+            } catch (Exception ex) {
+                logger.warn("Error while evicting entries of {}, evicting whole region", name, ex);
+                if (entityPersister != null)
+                    cache.evictEntityRegion(name);
+                else if (collectionPersister != null)
+                    cache.evictCollectionRegion(name);
+            }
+        });
+        if (invalidation.getEntities().isEmpty() == false) {
+            cache.evictDefaultQueryRegion();
+            cache.evictQueryRegions();
+        }
+
+        for (String userId : invalidation.getUsers()) {
+            userRoleCache.invalidate(userId);
+        }
+    }
+
+    private void broadcast(CacheInvalidation invalidation) {
+        if (enabled == false)
+            return;
+        sender.submit(() -> {
+            try {
+                kafkaSender.broadcastCacheInvalidation(invalidation);
+            } catch (Exception ex) {
+                logger.error("Error while broadcasting {}", invalidation, ex);
+            }
+        });
+    }
+
+    private void record(EventSource session, String name, Serializable identifier) {
+        if (enabled == false || identifier == null)
+            return;
+        pending.computeIfAbsent(session, key -> {
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completedSession) -> {
+                CacheInvalidation invalidation = pending.remove(key);
+                if (success && invalidation != null)
+                    broadcast(invalidation);
+            });
+            return new CacheInvalidation(KafkaConfig.INSTANCE_ID);
+        }).addEntity(name, identifier);
+    }
+
+    private static Serializable toIdentifier(Type type, String identifier) {
+        Class<?> identifierClass = type.getReturnedClass();
+        if (Long.class.equals(identifierClass))
+            return Long.valueOf(identifier);
+        if (Integer.class.equals(identifierClass))
+            return Integer.valueOf(identifier);
+        return identifier;
+    }
+
+    /**
+     * Records changes of entities and collections which are held in the second level cache.
+     */
+    private class EntityChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+            PostCollectionRecreateEventListener, PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getPersister().hasCache())
+                record(event.getSession(), event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (event.getPersister().hasCache())
+                record(event.getSession(), event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getPersister().hasCache())
+                record(event.getSession(), event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            recordCollection(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            recordCollection(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            recordCollection(event);
+        }
+
+        private void recordCollection(AbstractCollectionEvent event) {
+            String role = event.getCollection().getRole();
+            if (role == null)
+                return;
+            CollectionPersister persister = event.getSession().getFactory().getCollectionPersister(role);
+            if (persister.hasCache())
+                record(event.getSession(), role, event.getAffectedOwnerIdOrNull());
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import eu.nimble.core.infrastructure.identity.entity.dto.Credentials;
+import eu.nimble.core.infrastructure.identity.entity.dto.FrontEndUser;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+
+/**
+ * Logs users in to Rocket.Chat in the background, creating their chat users if missing, so that logins to the platform
+ * do not wait for Rocket.Chat. The pending chat sessions are kept for a limited time and picked up by the clients with
+ * a follow-up request. Sessions started on other replicas or expired in the meantime are created on demand.
+ */
+@Service
+public class ChatSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSessionService.class);
+
+    @Value("${nimble.rocketChat.async-login:false}")
+    private boolean asyncLogin;
+
+    @Value("${nimble.rocketChat.session.pool-size:4}")
+    private int poolSize;
+
+    @Value("${nimble.rocketChat.session.queue-size:1000}")
+    private int queueSize;
+
+    @Value("${nimble.rocketChat.session.ttl:300000}")
+    private long ttl;
+
+    @Autowired
+    private RocketChatService chatService;
+
+    private ExecutorService executor;
+
+    // pending or completed chat logins by Keycloak user id
+    private Cache<String, CompletableFuture<RocketChatLoginResponse>> sessions;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize));
+        this.sessions = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns whether chat sessions are created in the background instead of during the login.
+     */
+    public boolean isAsyncLogin() {
+        return asyncLogin;
+    }
+
+    /**
+     * Starts the chat login of a user in the background.
+     *
+     * @param userId       Keycloak id of the user
+     * @param frontEndUser user data required to create the chat user if missing
+     */
+    public void start(String userId, FrontEndUser frontEndUser) {
+        FrontEndUser chatUser = toChatUser(frontEndUser);
+        try {
+            sessions.put(userId, CompletableFuture.supplyAsync(() -> login(chatUser), executor));
+        } catch (RejectedExecutionException ex) {
+            // created on demand when requested by the client
+            logger.warn("Too many pending chat logins, skipping chat login of user {}", userId);
+        }
+    }
+
+    /**
+     * Returns the chat login of a user, starting it if not pending.
+     *
+     * @param userId       Keycloak id of the user
+     * @param frontEndUser user data required to create the chat user if missing
+     */
+    public CompletableFuture<RocketChatLoginResponse> get(String userId, FrontEndUser frontEndUser) {
+        FrontEndUser chatUser = toChatUser(frontEndUser);
+        try {
+            return sessions.get(userId, () -> CompletableFuture.supplyAsync(() -> login(chatUser), executor));
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            CompletableFuture<RocketChatLoginResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex.getCause());
+            return failed;
+        }
+    }
+
+    /**
+     * Removes a chat login once it has been delivered to the client or failed.
+     */
+    public void remove(String userId, CompletableFuture<RocketChatLoginResponse> session) {
+        sessions.asMap().remove(userId, session);
+    }
+
+    // copy of the user data required for chat, the original is modified by the login
+    private static FrontEndUser toChatUser(FrontEndUser frontEndUser) {
+        FrontEndUser chatUser = new FrontEndUser();
+        chatUser.setUsername(frontEndUser.getUsername());
+        chatUser.setFirstname(frontEndUser.getFirstname());
+        chatUser.setLastname(frontEndUser.getLastname());
+        return chatUser;
+    }
+
+    private RocketChatLoginResponse login(FrontEndUser frontEndUser) {
+        // passwords of chat users are derived from their username
+        Credentials credentials = new Credentials();
+        credentials.setUsername(frontEndUser.getUsername());
+        RocketChatLoginResponse rocketChatLoginResponse = chatService.loginOrCreateUser(frontEndUser, credentials, true, true);
+        if (rocketChatLoginResponse.getData() == null)
+            throw new IllegalStateException("Failed to log in user " + frontEndUser.getUsername() + " to Rocket.Chat");
+        return rocketChatLoginResponse;
+    }
+}
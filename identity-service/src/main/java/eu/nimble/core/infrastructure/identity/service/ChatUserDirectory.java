@@ -0,0 +1,162 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import eu.nimble.core.infrastructure.identity.entity.ChatUserEntry;
+import eu.nimble.core.infrastructure.identity.repository.ChatUserDirectoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local index of the Rocket.Chat users by their email address (see {@link ChatUserEntry}). The index is stored in a
+ * table shared by all replicas, which is updated whenever users are registered or deleted and synchronized with
+ * Rocket.Chat in the background (see {@link RocketChatService}). Lookups are cached for a limited time, including
+ * email addresses known to have no chat user, so that changes made by other replicas become visible after the TTL.
+ */
+@Component
+public class ChatUserDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatUserDirectory.class);
+
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    @Value("${nimble.rocketChat.directory.cache-ttl:300000}")
+    private long cacheTtl;
+
+    @Value("${nimble.rocketChat.directory.cache-max-size:10000}")
+    private long cacheMaxSize;
+
+    @Autowired
+    private ChatUserDirectoryRepository chatUserDirectoryRepository;
+
+    // chat usernames by lower case email address, empty if known to have no chat user
+    private Cache<String, Optional<String>> usernames;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.usernames = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
+
+    /**
+     * Returns the chat username of the given email address or null if no chat user is known.
+     */
+    public String getUsername(String email) {
+        if (email == null)
+            return null;
+        String key = normalize(email);
+        Optional<String> cached = usernames.getIfPresent(key);
+        if (cached != null)
+            return cached.orElse(null);
+
+        // misses of the table are not cached, they are looked up in Rocket.Chat by the caller
+        ChatUserEntry entry = chatUserDirectoryRepository.findOne(key);
+        if (entry == null)
+            return null;
+        usernames.put(key, Optional.of(entry.getUsername()));
+        return entry.getUsername();
+    }
+
+    /**
+     * Returns whether the given email address is known to have no chat user, i.e. was not found in Rocket.Chat recently.
+     */
+    public boolean isMissing(String email) {
+        if (email == null)
+            return true;
+        Optional<String> cached = usernames.getIfPresent(normalize(email));
+        return cached != null && cached.isPresent() == false;
+    }
+
+    /**
+     * Records that the given email address has no chat user, so that it is not looked up in Rocket.Chat again until
+     * the cached entry expires.
+     */
+    public void putMissing(String email) {
+        usernames.put(normalize(email), Optional.empty());
+    }
+
+    /**
+     * Returns all known chat users by their email address.
+     */
+    public Map<String, String> getUsernames() {
+        Map<String, String> chatUsers = new HashMap<>();
+        for (ChatUserEntry entry : chatUserDirectoryRepository.findAll())
+            chatUsers.put(entry.getEmail(), entry.getUsername());
+        return chatUsers;
+    }
+
+    public void put(String email, String username) {
+        String key = normalize(email);
+        save(key, username);
+        usernames.put(key, Optional.of(username));
+    }
+
+    public void remove(String email) {
+        String key = normalize(email);
+        if (chatUserDirectoryRepository.exists(key))
+            chatUserDirectoryRepository.delete(key);
+        usernames.put(key, Optional.empty());
+    }
+
+    /**
+     * Replaces the index with the given users of Rocket.Chat. Only changed entries are written, entries registered or
+     * changed since the start of the retrieval are kept.
+     *
+     * @param chatUsers chat usernames by email address
+     * @param startedAt time at which the retrieval of the users started
+     */
+    public void synchronize(Map<String, String> chatUsers, long startedAt) {
+        Map<String, String> normalizedUsers = new HashMap<>();
+        chatUsers.forEach((email, username) -> normalizedUsers.put(normalize(email), username));
+
+        // deletions are computed from the table, which includes the registrations of all replicas
+        Map<String, String> storedUsers = getUsernames();
+        int updated = 0;
+        for (Map.Entry<String, String> chatUser : normalizedUsers.entrySet()) {
+            if (chatUser.getValue().equals(storedUsers.get(chatUser.getKey())) == false) {
+                save(chatUser.getKey(), chatUser.getValue());
+                updated++;
+            }
+        }
+
+        Set<String> removed = new HashSet<>(storedUsers.keySet());
+        removed.removeAll(normalizedUsers.keySet());
+        int deleted = 0;
+        for (List<String> chunk : Iterables.partition(removed, DELETE_CHUNK_SIZE))
+            deleted += chatUserDirectoryRepository.deleteByEmailInUpdatedBefore(chunk, new Date(startedAt));
+        usernames.invalidateAll();
+        logger.info("Synchronized {} chat users, {} updated and {} removed", normalizedUsers.size(), updated, deleted);
+    }
+
+    private void save(String key, String username) {
+        ChatUserEntry entry = chatUserDirectoryRepository.findOne(key);
+        if (entry == null)
+            entry = new ChatUserEntry(key, username);
+        else if (username.equals(entry.getUsername()))
+            return;
+        else
+            entry.setUsername(username);
+        try {
+            chatUserDirectoryRepository.save(entry);
+        } catch (DataIntegrityViolationException ex) {
+            // inserted concurrently by another replica
+            logger.debug("Chat user {} already stored", key);
+        }
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ENGLISH);
+    }
+}
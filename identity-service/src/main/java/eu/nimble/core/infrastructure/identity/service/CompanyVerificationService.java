@@ -0,0 +1,232 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import com.google.common.base.Throwables;
+import eu.nimble.core.infrastructure.identity.entity.CompanyVerificationState;
+import eu.nimble.core.infrastructure.identity.entity.UaaUser;
+import eu.nimble.core.infrastructure.identity.repository.CompanyVerificationStateRepository;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
+import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
+import eu.nimble.core.infrastructure.identity.uaa.UserRolesChangedEvent;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.ws.rs.NotFoundException;
+import java.util.*;
+
+import static eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin.LEGAL_REPRESENTATIVE_ROLE;
+
+/**
+ * Maintains the materialized verification state of companies (see {@link CompanyVerificationState}).
+ */
+@Service
+public class CompanyVerificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompanyVerificationService.class);
+
+    private static final String BACKFILL_JOB = "verification-state:backfill";
+
+    private static final long BACKFILL_LEASE = 600000;
+
+    // number of companies after which the lease of the backfill is renewed
+    private static final int BACKFILL_RENEW_INTERVAL = 100;
+
+    @Autowired
+    private CompanyVerificationStateRepository verificationStateRepository;
+
+    @Autowired
+    private PartyRepository partyRepository;
+
+    @Autowired
+    private UaaUserRepository uaaUserRepository;
+
+    @Autowired
+    private KeycloakAdmin keycloakAdmin;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void updateState(PartyType company, AdminService.CompanyState state) {
+        CompanyVerificationState verificationState = verificationStateRepository.findOne(company.getHjid());
+        if (verificationState == null)
+            verificationState = new CompanyVerificationState(company.getHjid(), state);
+        else
+            verificationState.setState(state);
+        applySortKeys(verificationState, company);
+        verificationStateRepository.save(verificationState);
+    }
+
+    /**
+     * Updates the sort keys (name and registration date) of a company, e.g. after its settings have changed.
+     */
+    public void updateSortKeys(PartyType company) {
+        CompanyVerificationState verificationState = verificationStateRepository.findOne(company.getHjid());
+        if (verificationState == null)
+            return; // picked up by backfill
+        applySortKeys(verificationState, company);
+        verificationStateRepository.save(verificationState);
+    }
+
+    public void deleteState(PartyType company) {
+        if (verificationStateRepository.exists(company.getHjid()))
+            verificationStateRepository.delete(company.getHjid());
+    }
+
+    /**
+     * Recomputes the verification state of a company from the roles of its members. If the roles cannot be resolved,
+     * the stored state is kept and marked as stale, so that it is recomputed by the backfill.
+     */
+    public AdminService.CompanyState refreshState(PartyType company) {
+        AdminService.CompanyState state;
+        try {
+            state = computeState(company);
+        } catch (RuntimeException ex) {
+            markStale(company);
+            throw ex;
+        }
+        updateState(company, state);
+        logger.debug("Verification state of company {} is {}", company.getHjid(), state);
+        return state;
+    }
+
+    @EventListener
+    public void onUserRolesChanged(UserRolesChangedEvent event) {
+        try {
+            UaaUser uaaUser = uaaUserRepository.findByExternalID(event.getUserId());
+            if (uaaUser == null || uaaUser.getUBLPerson() == null)
+                return;
+            for (PartyType company : partyRepository.findByPerson(uaaUser.getUBLPerson())) {
+                try {
+                    refreshState(company);
+                } catch (Exception ex) {
+                    logger.error("Error while updating verification state of company {}", company.getHjid(), ex);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error while updating verification state of companies of user {}", event.getUserId(), ex);
+        }
+    }
+
+    /**
+     * Computes the state of companies that have no materialized state or sort keys yet (e.g. existing before the
+     * introduction of the projection) or whose state is stale. Runs on a single replica at a time, the lease is released after each run.
+     */
+    @Scheduled(initialDelayString = "${nimble.verification-state.backfill-initial-delay:60000}",
+            fixedDelayString = "${nimble.verification-state.backfill-interval:3600000}")
+    public void backfillStates() {
+        try {
+            if (!jobLeaseService.tryAcquire(BACKFILL_JOB, BACKFILL_LEASE))
+                return;
+        } catch (Exception ex) {
+            logger.error("Error while acquiring lease of verification state backfill", ex);
+            return;
+        }
+
+        try {
+            List<Long> partyIds = partyRepository.findHjidsWithoutVerificationState();
+            if (partyIds.isEmpty())
+                return;
+
+            logger.info("Computing verification state of {} companies", partyIds.size());
+            for (int i = 0; i < partyIds.size(); i++) {
+                Long partyId = partyIds.get(i);
+                if (i > 0 && i % BACKFILL_RENEW_INTERVAL == 0 && !jobLeaseService.renew(BACKFILL_JOB, BACKFILL_LEASE)) {
+                    logger.warn("Lease of verification state backfill lost, stopping after {} companies", i);
+                    return;
+                }
+                try {
+                    transactionTemplate.execute(status -> {
+                        partyRepository.findByHjid(partyId).stream().findFirst().ifPresent(this::refreshState);
+                        return null;
+                    });
+                } catch (Exception ex) {
+                    logger.error("Error while computing verification state of company {}", partyId, ex);
+                }
+            }
+        } finally {
+            // the backfill is repeated, hence the lease is released instead of completed
+            jobLeaseService.release(BACKFILL_JOB);
+        }
+    }
+
+    private static void applySortKeys(CompanyVerificationState verificationState, PartyType company) {
+        // sort keys are never null in order to allow keyset pagination
+        String sortName = "";
+        if (company.getPartyName().isEmpty() == false && company.getPartyName().get(0).getName() != null
+                && company.getPartyName().get(0).getName().getValue() != null)
+            sortName = company.getPartyName().get(0).getName().getValue().toLowerCase();
+        verificationState.setSortName(sortName);
+
+        Date registrationDate = new Date(0);
+        if (company.getMetadata() != null && company.getMetadata().getCreationDateItem() != null)
+            registrationDate = company.getMetadata().getCreationDateItem();
+        verificationState.setRegistrationDate(registrationDate);
+    }
+
+    private void markStale(PartyType company) {
+        try {
+            CompanyVerificationState verificationState = verificationStateRepository.findOne(company.getHjid());
+            if (verificationState == null)
+                return; // picked up by backfill
+            verificationState.setStale(true);
+            verificationStateRepository.save(verificationState);
+        } catch (Exception ex) {
+            logger.error("Error while marking verification state of company {} as stale", company.getHjid(), ex);
+        }
+    }
+
+    /**
+     * Computes the state of a company from the roles of its members.
+     *
+     * @throws IllegalStateException if the roles of a member could not be resolved
+     */
+    private AdminService.CompanyState computeState(PartyType company) {
+
+        // collect roles of company members
+        Set<String> mergedRoles = new HashSet<>();
+        for (PersonType companyMember : company.getPerson()) {
+            Optional<UaaUser> uaaUser = uaaUserRepository.findByUblPerson(companyMember).stream().findFirst();
+            if (uaaUser.isPresent() == false)
+                continue;
+
+            // avoid invalid usernames (only emails are allowed)
+            if (uaaUser.get().getUsername().contains("@") == false)
+                continue;
+
+            try {
+                mergedRoles.addAll(keycloakAdmin.getUserRoles(uaaUser.get().getExternalID(), KeycloakAdmin.NON_NIMBLE_ROLES));
+            } catch (Exception ex) {
+                // users missing in Keycloak hold no roles, other errors must not be taken for missing roles
+                if (Throwables.getRootCause(ex) instanceof NotFoundException)
+                    continue;
+                throw new IllegalStateException("Failed to fetch roles of user " + uaaUser.get().getUsername(), ex);
+            }
+        }
+
+        if (mergedRoles.contains(LEGAL_REPRESENTATIVE_ROLE))
+            return AdminService.CompanyState.VERIFIED;
+        if (mergedRoles.isEmpty() == false)
+            return AdminService.CompanyState.UNVERIFIED;
+        return null;
+    }
+}
@@ -11,6 +11,7 @@ import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.core.infrastructure.identity.uaa.OAuthClient;
 import eu.nimble.core.infrastructure.identity.uaa.OpenIdConnectUserDetails;
+import eu.nimble.core.infrastructure.identity.uaa.TokenDetailsCache;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.LocationType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Service;
 import javax.ws.rs.NotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class IdentityService {
@@ -39,13 +41,16 @@ public class IdentityService {
     @Autowired
     private KeycloakAdmin keycloakAdmin;
 
+    @Autowired
+    private TokenDetailsCache tokenDetailsCache;
+
     public UaaUser getUserfromBearer(String bearer) throws IOException {
         OpenIdConnectUserDetails userDetails = getUserDetails(bearer);
         return uaaUserRepository.findByExternalID(userDetails.getUserId());
     }
 
     public OpenIdConnectUserDetails getUserDetails(String bearer) throws IOException {
-        return OpenIdConnectUserDetails.fromBearer(bearer);
+        return tokenDetailsCache.fromBearer(bearer);
     }
 
     /**
@@ -112,7 +117,37 @@ public class IdentityService {
     }
 
     public void enrichWithRoles(PartyType party) {
-        party.getPerson().forEach(this::enrichWithRoles);
+        enrichWithRoles(Collections.singletonList(party));
+    }
+
+    /**
+     * Sets the roles of all members of the given parties, resolving the roles of all members at once.
+     */
+    public void enrichWithRoles(Collection<PartyType> parties) {
+        enrichPersonsWithRoles(parties.stream()
+                .flatMap(party -> party.getPerson().stream())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Sets the roles of all given persons, resolving the roles at once.
+     */
+    public void enrichPersonsWithRoles(Collection<PersonType> persons) {
+        if (persons.isEmpty())
+            return;
+
+        Map<Long, String> externalIds = new HashMap<>();
+        for (UaaUser uaaUser : uaaUserRepository.findByUblPersonIn(persons))
+            externalIds.put(uaaUser.getUBLPerson().getHjid(), uaaUser.getExternalID());
+
+        // failures are isolated per user
+        Map<String, Set<String>> userRoles = keycloakAdmin.getUserRoles(externalIds.values(), KeycloakAdmin.NON_NIMBLE_ROLES);
+
+        for (PersonType person : persons) {
+            Set<String> roles = userRoles.getOrDefault(externalIds.get(person.getHjid()), Collections.emptySet());
+            person.getRole().clear();
+            person.getRole().addAll(roles);
+        }
     }
 
     public static Double computeDetailsCompleteness(CompanyDetails companyDetails) {
@@ -0,0 +1,87 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.config.KafkaConfig;
+import eu.nimble.core.infrastructure.identity.entity.JobLease;
+import eu.nimble.core.infrastructure.identity.repository.JobLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+
+/**
+ * Coordinates scheduled jobs among the replicas of the service. A job run is identified by a unique name (e.g. the
+ * name of the job and the date of the run) and executed only by the replica acquiring its lease.
+ */
+@Service
+public class JobLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLeaseService.class);
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    /**
+     * Acquires the lease of the given run, unless it is held by another replica or the run has already been completed.
+     *
+     * @param name     unique name of the run
+     * @param duration time in milliseconds after which the lease can be taken over by another replica
+     * @return true if the lease was acquired
+     */
+    public boolean tryAcquire(String name, long duration) {
+        Date now = new Date();
+        Date leaseUntil = new Date(now.getTime() + duration);
+        try {
+            if (jobLeaseRepository.takeOver(name, getOwner(), now, leaseUntil) == 1) {
+                logger.warn("Took over expired lease of {}", name);
+                return true;
+            }
+            if (jobLeaseRepository.exists(name))
+                return false;
+            jobLeaseRepository.save(new JobLease(name, getOwner(), leaseUntil));
+            return true;
+        } catch (DataIntegrityViolationException ex) {
+            // lease inserted concurrently by another replica
+            logger.debug("Lease of {} acquired by another replica", name);
+            return false;
+        }
+    }
+
+    /**
+     * Extends the lease of a run held by this replica.
+     *
+     * @param name     unique name of the run
+     * @param duration time in milliseconds from now after which the lease can be taken over by another replica
+     * @return false if the lease has been taken over by another replica in the meantime
+     */
+    public boolean renew(String name, long duration) {
+        return jobLeaseRepository.renew(name, getOwner(), new Date(System.currentTimeMillis() + duration)) == 1;
+    }
+
+    /**
+     * Marks the run as completed, so that it is not executed again.
+     */
+    public void complete(String name) {
+        jobLeaseRepository.complete(name, getOwner());
+    }
+
+    /**
+     * Releases the lease of a failed run, so that it can be taken over by another replica.
+     */
+    public void release(String name) {
+        jobLeaseRepository.release(name, getOwner(), new Date());
+    }
+
+    /**
+     * Removes the leases of the jobs starting with the given prefix which expired before the given date.
+     */
+    public int deleteExpired(String prefix, Date before) {
+        return jobLeaseRepository.deleteExpired(prefix + "%", before);
+    }
+
+    private static String getOwner() {
+        return KafkaConfig.INSTANCE_ID;
+    }
+}
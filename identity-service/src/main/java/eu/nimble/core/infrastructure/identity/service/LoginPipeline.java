@@ -0,0 +1,347 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.entity.UaaUser;
+import eu.nimble.core.infrastructure.identity.entity.dto.Credentials;
+import eu.nimble.core.infrastructure.identity.entity.dto.FrontEndUser;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
+import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
+import eu.nimble.core.infrastructure.identity.utils.UblAdapter;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the data of a user logging in once the access token has been obtained. The independent lookups, i.e. the
+ * local user and companies, the Keycloak roles and the Rocket.Chat login, run concurrently, each bounded by its own
+ * timeout. Stages run in bounded pools and stages which time out are cancelled. Lookups which cannot be queued run on
+ * the calling thread, so that bursts of logins are slowed down rather than rejected, while chat logins which cannot be
+ * queued are skipped. Durations and timeouts of every stage are exposed via the metrics endpoint.
+ */
+@Service
+public class LoginPipeline implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginPipeline.class);
+
+    private static final String METRIC_PREFIX = "login.";
+
+    private static final String STAGE_USER = "user";
+    private static final String STAGE_ROLES = "roles";
+    private static final String STAGE_CHAT = "chat";
+    private static final String STAGE_TOTAL = "total";
+
+    public enum Status {SUCCESS, USER_NOT_FOUND, USER_DELETED, TIMEOUT}
+
+    @Value("${nimble.login.pool-size:16}")
+    private int poolSize;
+
+    @Value("${nimble.login.chat-pool-size:8}")
+    private int chatPoolSize;
+
+    @Value("${nimble.login.queue-size:100}")
+    private int queueSize;
+
+    @Value("${nimble.login.chat-queue-size:100}")
+    private int chatQueueSize;
+
+    @Value("${nimble.login.timeout.user:5000}")
+    private long userTimeout;
+
+    @Value("${nimble.login.timeout.roles:5000}")
+    private long rolesTimeout;
+
+    @Value("${nimble.login.timeout.chat:5000}")
+    private long chatTimeout;
+
+    @Autowired
+    private UaaUserRepository uaaUserRepository;
+
+    @Autowired
+    private PartyRepository partyRepository;
+
+    @Autowired
+    private KeycloakAdmin keycloakAdmin;
+
+    @Autowired
+    private RocketChatService chatService;
+
+    @Autowired
+    private ChatSessionService chatSessionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    // lookups of the database and Keycloak
+    private ExecutorService lookupExecutor;
+
+    // kept apart, so that slow chat logins do not delay the lookups
+    private ExecutorService chatExecutor;
+
+    private final Map<String, StageTimer> timers = new LinkedHashMap<>();
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.lookupExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.chatExecutor = new ThreadPoolExecutor(chatPoolSize, chatPoolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(chatQueueSize));
+        for (String stage : Arrays.asList(STAGE_USER, STAGE_ROLES, STAGE_CHAT, STAGE_TOTAL))
+            timers.put(stage, new StageTimer());
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        lookupExecutor.shutdown();
+        chatExecutor.shutdown();
+    }
+
+    /**
+     * Collects the data of the given user.
+     *
+     * @param keycloakUserID Keycloak id of the user
+     * @param credentials    credentials of the user, the email address is used to log in to Rocket.Chat
+     */
+    public Result login(String keycloakUserID, Credentials credentials) {
+        long start = System.nanoTime();
+        Map<String, Long> durations = new ConcurrentHashMap<>();
+
+        Future<FrontEndUser> userStage = runStage(STAGE_USER, durations, lookupExecutor,
+                () -> readOnlyTransaction.execute(status -> loadUser(keycloakUserID)));
+        Future<Set<String>> rolesStage = runStage(STAGE_ROLES, durations, lookupExecutor,
+                () -> keycloakAdmin.getUserRoles(keycloakUserID));
+
+        // existing chat users are logged in right away, missing ones are only created once the user is known to be active
+        boolean chatLoginEnabled = chatService.isChatEnabled() && chatSessionService.isAsyncLogin() == false;
+        ChatLogin chatLogin = chatLoginEnabled ? new ChatLogin() : null;
+        Future<RocketChatLoginResponse> chatStage = null;
+        if (chatLoginEnabled) {
+            chatStage = runStage(STAGE_CHAT, durations, chatExecutor,
+                    () -> chatLogin.complete(chatService.loginUser(credentials)));
+        }
+
+        boolean chatDelivered = false;
+        try {
+            FrontEndUser frontEndUser = await(STAGE_USER, userStage, userTimeout, start);
+            if (frontEndUser == null)
+                return new Result(Status.USER_NOT_FOUND, null);
+
+            Set<String> roles = await(STAGE_ROLES, rolesStage, rolesTimeout, start);
+            if (roles.contains(KeycloakAdmin.NIMBLE_DELETED_USER))
+                return new Result(Status.USER_DELETED, null);
+
+            if (chatLogin != null) {
+                // both chat requests share the timeout of the stage
+                RocketChatLoginResponse rocketChatToken = awaitChat(chatStage, start);
+                if (rocketChatToken != null && rocketChatToken.getData() == null) {
+                    // chat user missing
+                    rocketChatToken = awaitChat(runStage(STAGE_CHAT, durations, chatExecutor,
+                            () -> chatLogin.complete(chatService.registerAndLoginUser(frontEndUser, credentials))), start);
+                }
+                if (rocketChatToken != null && rocketChatToken.getData() != null) {
+                    frontEndUser.setRocketChatToken(rocketChatToken.getData().getAuthToken());
+                    frontEndUser.setRocketChatUsername(rocketChatToken.getData().getMe().getUsername());
+                    frontEndUser.setRocketChatUserID(rocketChatToken.getData().getUserId());
+                    chatDelivered = true;
+                } else {
+                    logger.warn("Rocket.Chat login of user {} failed, continuing without chat", credentials.getUsername());
+                }
+            } else if (chatService.isChatEnabled()) {
+                chatSessionService.start(keycloakUserID, frontEndUser);
+            }
+
+            return new Result(Status.SUCCESS, frontEndUser);
+        } catch (StageTimeoutException ex) {
+            logger.error("Login of user {} timed out in stage {}", credentials.getUsername(), ex.getMessage());
+            return new Result(Status.TIMEOUT, null);
+        } finally {
+            userStage.cancel(true);
+            rolesStage.cancel(true);
+            // sessions of failed logins or arriving too late are not delivered
+            if (chatLogin != null && chatDelivered == false)
+                chatLogin.discard();
+
+            long total = System.nanoTime() - start;
+            timers.get(STAGE_TOTAL).record(total);
+            logger.debug("Login of user {} took {} ms, stages: {}", credentials.getUsername(), TimeUnit.NANOSECONDS.toMillis(total), durations);
+        }
+    }
+
+    private FrontEndUser loadUser(String keycloakUserID) {
+        UaaUser potentialUser = uaaUserRepository.findWithPersonByExternalID(keycloakUserID);
+        if (potentialUser == null)
+            return null;
+        List<PartyType> companies = partyRepository.findWithNamesByPerson(potentialUser.getUBLPerson());
+        return UblAdapter.adaptUser(potentialUser, companies);
+    }
+
+    /**
+     * Queues a stage. If the pool is exhausted, lookups run on the calling thread and chat stages fail with a timeout.
+     */
+    private <T> Future<T> runStage(String stage, Map<String, Long> durations, ExecutorService executor, Callable<T> task) {
+        try {
+            return executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long duration = System.nanoTime() - start;
+                    timers.get(stage).record(duration);
+                    durations.merge(stage, TimeUnit.NANOSECONDS.toMillis(duration), Long::sum);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            timers.get(stage).timeout();
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new StageTimeoutException(stage));
+            return rejected;
+        }
+    }
+
+    /**
+     * Waits for the result of a stage until its timeout, measured from the given start of the stage. Stages which time
+     * out are cancelled.
+     */
+    private <T> T await(String stage, Future<T> future, long timeout, long start) {
+        long remaining = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        try {
+            return future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            timers.get(stage).timeout();
+            throw new StageTimeoutException(stage);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // chat is optional, hence failures and timeouts do not fail the login
+    private RocketChatLoginResponse awaitChat(Future<RocketChatLoginResponse> future, long start) {
+        try {
+            return await(STAGE_CHAT, future, chatTimeout, start);
+        } catch (RuntimeException ex) {
+            logger.warn("Rocket.Chat login failed: {}", ex.toString());
+            return null;
+        }
+    }
+
+    private void logout(RocketChatLoginResponse rocketChatLoginResponse) {
+        if (rocketChatLoginResponse == null || rocketChatLoginResponse.getData() == null)
+            return;
+        String userId = rocketChatLoginResponse.getData().getUserId();
+        String authToken = rocketChatLoginResponse.getData().getAuthToken();
+        try {
+            chatExecutor.execute(() -> chatService.logout(userId, authToken));
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Too many pending chat requests, not logging out discarded session of Rocket.Chat user {}", userId);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        timers.forEach((stage, timer) -> {
+            long count = timer.count.sum();
+            metrics.add(new Metric<>(METRIC_PREFIX + stage + ".count", count));
+            metrics.add(new Metric<>(METRIC_PREFIX + stage + ".time.mean", count > 0 ? timer.totalMillis() / count : 0.0));
+            metrics.add(new Metric<>(METRIC_PREFIX + stage + ".time.max", TimeUnit.NANOSECONDS.toMillis(timer.max.get())));
+            metrics.add(new Metric<>(METRIC_PREFIX + stage + ".timeouts", timer.timeouts.sum()));
+        });
+        return metrics;
+    }
+
+    /**
+     * Outcome of a login, the user data is only set if successful.
+     */
+    public static class Result {
+        private final Status status;
+        private final FrontEndUser frontEndUser;
+
+        Result(Status status, FrontEndUser frontEndUser) {
+            this.status = status;
+            this.frontEndUser = frontEndUser;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public FrontEndUser getFrontEndUser() {
+            return frontEndUser;
+        }
+    }
+
+    /**
+     * Hands over the chat session of a login. Sessions which are not delivered to the user, e.g. because the login
+     * failed or the chat stage timed out, are logged out once available.
+     */
+    private class ChatLogin {
+        private RocketChatLoginResponse response;
+        private boolean discarded = false;
+
+        synchronized RocketChatLoginResponse complete(RocketChatLoginResponse response) {
+            if (discarded)
+                logout(response);
+            else if (response != null && response.getData() != null)
+                this.response = response;
+            return response;
+        }
+
+        synchronized void discard() {
+            discarded = true;
+            logout(response);
+            response = null;
+        }
+    }
+
+    private static class StageTimer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final LongAdder timeouts = new LongAdder();
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        void timeout() {
+            timeouts.increment();
+        }
+
+        double totalMillis() {
+            return totalNanos.sum() / 1000000.0;
+        }
+    }
+
+    private static class StageTimeoutException extends RuntimeException {
+        StageTimeoutException(String stage) {
+            super(stage);
+        }
+    }
+}
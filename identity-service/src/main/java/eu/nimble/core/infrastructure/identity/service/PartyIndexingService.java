@@ -0,0 +1,215 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.clients.IndexingClient;
+import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
+import eu.nimble.core.infrastructure.identity.entity.CompanyVerificationState;
+import eu.nimble.core.infrastructure.identity.entity.IndexingOutboxEntry;
+import eu.nimble.core.infrastructure.identity.repository.CompanyVerificationStateRepository;
+import eu.nimble.core.infrastructure.identity.repository.IndexingOutboxRepository;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.QualifyingPartyRepository;
+import eu.nimble.core.infrastructure.identity.utils.DataModelUtils;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.QualifyingPartyType;
+import feign.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the indexing services up to date with the parties of the platform. Changes of parties are recorded in an
+ * outbox (see {@link IndexingOutboxEntry}), which is processed in the background: repeated changes of a party are
+ * coalesced, the index document is built from the current state of the database and pushed to all indexing services
+ * in parallel. Failed updates are retried with exponential backoff. Entries are claimed before being processed, so that
+ * each update is sent by a single replica. Background delivery requires the default token of the service, without it
+ * updates are sent right away using the token of the request.
+ */
+@Service
+public class PartyIndexingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartyIndexingService.class);
+
+    private static final long MAX_RETRY_DELAY = 3600000;
+
+    @Value("${nimble.indexing.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${nimble.indexing.outbox.pool-size:4}")
+    private int poolSize;
+
+    @Value("${nimble.indexing.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${nimble.indexing.outbox.retry-delay:5000}")
+    private long retryDelay;
+
+    // time in milliseconds after which claimed entries are processed by another replica if not completed
+    @Value("${nimble.indexing.outbox.lease:60000}")
+    private long leaseDuration;
+
+    @Value("${nimble.default-token}")
+    private String defaultToken;
+
+    @Autowired
+    private IndexingOutboxRepository outboxRepository;
+
+    @Autowired
+    private PartyRepository partyRepository;
+
+    @Autowired
+    private QualifyingPartyRepository qualifyingPartyRepository;
+
+    @Autowired
+    private CompanyVerificationStateRepository verificationStateRepository;
+
+    @Autowired
+    private IndexingClientController indexingController;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.executor = Executors.newFixedThreadPool(poolSize);
+        if (defaultToken.isEmpty())
+            logger.warn("No default token configured, parties are indexed synchronously");
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Records a change of the given party, which is pushed to the indexing services in the background. If no default
+     * token is configured, the change is pushed right away.
+     *
+     * @param party  changed party
+     * @param bearer token of the current request, used if no default token is configured
+     */
+    public void enqueue(PartyType party, String bearer) {
+        if (defaultToken.isEmpty() == false) {
+            outboxRepository.save(new IndexingOutboxEntry(party.getHjid()));
+            return;
+        }
+
+        // tokens of requests expire, hence they cannot be used for background delivery
+        eu.nimble.service.model.solr.party.PartyType indexParty = transactionTemplate.execute(status -> toIndexParty(party.getHjid()));
+        if (indexParty == null)
+            return;
+        for (IndexingClient indexingClient : indexingController.getClients())
+            send(indexingClient, indexParty, bearer);
+    }
+
+    @Scheduled(initialDelayString = "${nimble.indexing.outbox.interval:2000}", fixedDelayString = "${nimble.indexing.outbox.interval:2000}")
+    public void processOutbox() {
+        if (defaultToken.isEmpty())
+            return;
+        List<IndexingOutboxEntry> entries;
+        do {
+            entries = outboxRepository.findByNextAttemptLessThanEqualOrderByIdAsc(new Date(), new PageRequest(0, batchSize));
+            processBatch(entries);
+        } while (entries.size() == batchSize);
+    }
+
+    private void processBatch(List<IndexingOutboxEntry> entries) {
+
+        // coalesce entries of the same party
+        Map<Long, IndexingOutboxEntry> latestEntries = new LinkedHashMap<>();
+        for (IndexingOutboxEntry entry : entries)
+            latestEntries.merge(entry.getPartyHjid(), entry, (a, b) -> a.getId() > b.getId() ? a : b);
+
+        // build documents and send them to all indexing services in parallel
+        Map<Long, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+        for (Long partyHjid : latestEntries.keySet()) {
+            // skip parties processed by another replica
+            Date now = new Date();
+            if (outboxRepository.claim(partyHjid, latestEntries.get(partyHjid).getId(), now, new Date(now.getTime() + leaseDuration)) == 0)
+                continue;
+
+            try {
+                eu.nimble.service.model.solr.party.PartyType indexParty = transactionTemplate.execute(status -> toIndexParty(partyHjid));
+                if (indexParty == null) {
+                    // nothing to index (e.g. deleted in the meantime)
+                    results.put(partyHjid, CompletableFuture.completedFuture(true));
+                    continue;
+                }
+
+                List<CompletableFuture<Boolean>> sends = new ArrayList<>();
+                for (IndexingClient indexingClient : indexingController.getClients())
+                    sends.add(CompletableFuture.supplyAsync(() -> send(indexingClient, indexParty, defaultToken), executor));
+                results.put(partyHjid, CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                        .thenApply(v -> sends.stream().allMatch(CompletableFuture::join)));
+            } catch (Exception ex) {
+                logger.error("Error while preparing index update of party {}", partyHjid, ex);
+                results.put(partyHjid, CompletableFuture.completedFuture(false));
+            }
+        }
+
+        // remove or postpone processed entries
+        results.forEach((partyHjid, result) -> {
+            IndexingOutboxEntry entry = latestEntries.get(partyHjid);
+            if (result.join()) {
+                outboxRepository.deleteProcessed(partyHjid, entry.getId());
+            } else if (entry.getAttempts() + 1 >= maxAttempts) {
+                logger.error("Giving up indexing party {} after {} attempts", partyHjid, entry.getAttempts() + 1);
+                outboxRepository.deleteProcessed(partyHjid, entry.getId());
+            } else {
+                long delay = Math.min(retryDelay << entry.getAttempts(), MAX_RETRY_DELAY);
+                outboxRepository.postpone(partyHjid, entry.getId(), new Date(System.currentTimeMillis() + delay));
+            }
+        });
+    }
+
+    /**
+     * Builds the index document of the given party from the database. Has to be called within a transaction.
+     *
+     * @return index document or null if the party is deleted or incomplete
+     */
+    public eu.nimble.service.model.solr.party.PartyType toIndexParty(Long partyHjid) {
+        PartyType party = partyRepository.findWithDetailsByHjid(partyHjid).stream().findFirst().orElse(null);
+        if (party == null || Boolean.TRUE.equals(party.isDeleted()))
+            return null;
+        QualifyingPartyType qualifyingParty = qualifyingPartyRepository.findByParty(party).stream().findFirst().orElse(null);
+        if (qualifyingParty == null)
+            return null;
+
+        eu.nimble.service.model.solr.party.PartyType indexParty = DataModelUtils.toIndexParty(party, qualifyingParty);
+        CompanyVerificationState verificationState = verificationStateRepository.findOne(partyHjid);
+        indexParty.setVerified(verificationState != null && verificationState.getState() == AdminService.CompanyState.VERIFIED);
+        return indexParty;
+    }
+
+    static boolean send(IndexingClient indexingClient, eu.nimble.service.model.solr.party.PartyType indexParty, String bearer) {
+        try {
+            Response response = indexingClient.setParty(indexParty, bearer);
+            if (response != null && response.status() == 200)
+                return true;
+            logger.warn("Failed to index party {}: {}", indexParty.getId(), response == null ? "no response" : response.status());
+        } catch (Exception ex) {
+            logger.warn("Failed to index party {}", indexParty.getId(), ex);
+        }
+        return false;
+    }
+}
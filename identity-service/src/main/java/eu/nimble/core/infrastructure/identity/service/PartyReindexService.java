@@ -0,0 +1,233 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.clients.IndexingClient;
+import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
+import eu.nimble.core.infrastructure.identity.entity.ReindexJob;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.ReindexJobRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Reindexes all parties in the background (see {@link ReindexJob}). Parties are read in chunks and pushed to the
+ * indexing services by a bounded pool of workers. A job is executed by the replica holding its lease, which is renewed
+ * after each chunk. Jobs whose lease expired (e.g. because of a restart) are resumed from their last checkpoint by any
+ * replica. Jobs run in the background, hence they require the default token of the service.
+ */
+@Service
+public class PartyReindexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartyReindexService.class);
+
+    private static final String LEASE_PREFIX = "party-reindex:";
+
+    // serializes the start of jobs among the replicas
+    private static final String START_LEASE = "party-reindex-start";
+
+    private static final long START_LEASE_DURATION = 60000;
+
+    // length of the message column of jobs
+    private static final int MAX_MESSAGE_LENGTH = 255;
+
+    @Value("${nimble.indexing.reindex.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${nimble.indexing.reindex.pool-size:8}")
+    private int poolSize;
+
+    // time in milliseconds after which a job is resumed by another replica if its lease was not renewed
+    @Value("${nimble.indexing.reindex.lease:300000}")
+    private long leaseDuration;
+
+    @Value("${nimble.default-token}")
+    private String defaultToken;
+
+    @Autowired
+    private ReindexJobRepository reindexJobRepository;
+
+    @Autowired
+    private PartyRepository partyRepository;
+
+    @Autowired
+    private PartyIndexingService partyIndexingService;
+
+    @Autowired
+    private IndexingClientController indexingController;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService jobExecutor;
+
+    private ExecutorService workers;
+
+    // jobs executed or queued by this replica
+    private final Set<Long> localJobs = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.jobExecutor = Executors.newSingleThreadExecutor();
+        this.workers = Executors.newFixedThreadPool(poolSize);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Returns whether a default token is configured, which is required for running jobs in the background.
+     */
+    public boolean isEnabled() {
+        return defaultToken.isEmpty() == false;
+    }
+
+    /**
+     * Starts a new reindex job or returns the running one.
+     *
+     * @return the started or running job, null if a job is being started by another replica at the same time
+     */
+    public synchronized ReindexJob startJob() {
+        if (isEnabled() == false)
+            throw new IllegalStateException("No default token configured for reindexing");
+
+        // looking up the running job and creating a new one is not atomic, hence starts are serialized by a lease
+        if (jobLeaseService.tryAcquire(START_LEASE, START_LEASE_DURATION) == false)
+            return null;
+        try {
+            List<ReindexJob> runningJobs = reindexJobRepository.findByStatus(ReindexJob.Status.RUNNING);
+            if (runningJobs.isEmpty() == false)
+                return runningJobs.get(0);
+
+            ReindexJob job = reindexJobRepository.save(new ReindexJob(partyRepository.countIndexable()));
+            if (jobLeaseService.tryAcquire(getLeaseName(job.getId()), leaseDuration) == false)
+                throw new IllegalStateException("Lease of reindex job " + job.getId() + " held by another replica");
+            submit(job.getId());
+            logger.info("Started reindex job {} for {} parties", job.getId(), job.getTotal());
+            return job;
+        } finally {
+            jobLeaseService.release(START_LEASE);
+        }
+    }
+
+    public ReindexJob getJob(Long jobId) {
+        return reindexJobRepository.findOne(jobId);
+    }
+
+    /**
+     * Resumes running jobs whose lease expired, i.e. which are not executed by any replica anymore.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${nimble.indexing.reindex.lease:300000}", fixedDelayString = "${nimble.indexing.reindex.lease:300000}")
+    public void resumeJobs() {
+        for (ReindexJob job : reindexJobRepository.findByStatus(ReindexJob.Status.RUNNING)) {
+            if (localJobs.contains(job.getId()))
+                continue;
+            if (jobLeaseService.tryAcquire(getLeaseName(job.getId()), leaseDuration) == false)
+                continue;
+            if (isEnabled() == false) {
+                job.fail("Interrupted and no default token configured for resuming");
+                reindexJobRepository.save(job);
+                jobLeaseService.complete(getLeaseName(job.getId()));
+                continue;
+            }
+            logger.info("Resuming reindex job {} after party {}", job.getId(), job.getCheckpoint());
+            submit(job.getId());
+        }
+    }
+
+    private void submit(Long jobId) {
+        localJobs.add(jobId);
+        jobExecutor.submit(() -> {
+            try {
+                run(jobId);
+            } finally {
+                localJobs.remove(jobId);
+            }
+        });
+    }
+
+    private void run(Long jobId) {
+        String leaseName = getLeaseName(jobId);
+        ReindexJob job = reindexJobRepository.findOne(jobId);
+        Map<String, IndexingClient> clients = indexingController.getNamedClients();
+        try {
+            List<Long> partyIds;
+            do {
+                partyIds = partyRepository.findIndexableHjids(job.getCheckpoint(), new PageRequest(0, chunkSize));
+                if (partyIds.isEmpty())
+                    break;
+
+                List<Long> chunk = partyIds;
+                List<eu.nimble.service.model.solr.party.PartyType> indexParties = transactionTemplate.execute(status -> chunk.stream()
+                        .map(partyIndexingService::toIndexParty)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+
+                // push chunk to all indexes in parallel
+                Map<String, List<CompletableFuture<Boolean>>> results = new LinkedHashMap<>();
+                clients.forEach((index, client) -> results.put(index, indexParties.stream()
+                        .map(indexParty -> CompletableFuture.supplyAsync(() -> PartyIndexingService.send(client, indexParty, defaultToken), workers))
+                        .collect(Collectors.toList())));
+                results.forEach((index, sends) -> {
+                    long indexed = sends.stream().filter(CompletableFuture::join).count();
+                    job.count(index, indexed, sends.size() - indexed);
+                });
+
+                // stop if another replica took over the job in the meantime
+                if (jobLeaseService.renew(leaseName, leaseDuration) == false) {
+                    logger.warn("Lost lease of reindex job {}, stopping", jobId);
+                    return;
+                }
+                job.checkpoint(chunk.get(chunk.size() - 1), chunk.size());
+                reindexJobRepository.save(job);
+                logger.debug("Reindex job {} processed {} of {} parties", jobId, job.getProcessed(), job.getTotal());
+            } while (partyIds.size() == chunkSize);
+
+            job.complete();
+            logger.info("Reindex job {} completed: indexed {}, errors {}", jobId, job.getIndexed(), job.getErrors());
+        } catch (Exception ex) {
+            logger.error("Reindex job {} failed", jobId, ex);
+            job.fail(StringUtils.abbreviate(String.valueOf(ex.getMessage()), MAX_MESSAGE_LENGTH));
+        }
+        try {
+            reindexJobRepository.save(job);
+        } finally {
+            // a job which cannot be saved is not resumed over and over again
+            jobLeaseService.complete(leaseName);
+        }
+    }
+
+    private static String getLeaseName(Long jobId) {
+        return LEASE_PREFIX + jobId;
+    }
+}
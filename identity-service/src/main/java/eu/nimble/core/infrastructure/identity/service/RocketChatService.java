@@ -14,17 +14,26 @@ import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.list.UserEma
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.register.RockerChatRegisterResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.register.RocketChatDeleteResponse;
+import eu.nimble.core.infrastructure.identity.utils.PooledHttpRequestFactory;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.encoding.Md5PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +46,13 @@ public class RocketChatService {
 
     private static final Logger logger = LoggerFactory.getLogger(IdentityController.class);
 
+    private static final String DIRECTORY_SYNC_JOB = "chat-directory-sync";
+
+    // time after which a synchronization is taken over by another replica if not completed
+    private static final long DIRECTORY_SYNC_LEASE = 600000;
+
+    private static final long DIRECTORY_SYNC_LEASE_RETENTION = 7 * 24 * 3600 * 1000L;
+
     @Value("${nimble.rocketChat.url}")
     private String rocketChatURL;
 
@@ -52,6 +68,54 @@ public class RocketChatService {
     @Value("${nimble.rocketChat.isEnabled}")
     private boolean isChatEnabled;
 
+    @Value("${nimble.rocketChat.pool.max-total:50}")
+    private int maxConnections;
+
+    @Value("${nimble.rocketChat.pool.max-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${nimble.rocketChat.connect-timeout:5000}")
+    private int connectTimeout;
+
+    @Value("${nimble.rocketChat.read-timeout:10000}")
+    private int readTimeout;
+
+    // number of users retrieved per request when synchronizing the user directory
+    @Value("${nimble.rocketChat.directory.page-size:500}")
+    private int directoryPageSize;
+
+    @Value("${nimble.rocketChat.directory.sync-interval:3600000}")
+    private long directorySyncInterval;
+
+    @Autowired
+    private ChatUserDirectory chatUserDirectory;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    private HttpComponentsClientHttpRequestFactory requestFactory;
+
+    // shared by all requests to Rocket.Chat and the chat service, connections are kept alive and reused
+    private RestTemplate rs;
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // session of the admin user, renewed if rejected by Rocket.Chat
+    private AdminSession adminSession;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.requestFactory = PooledHttpRequestFactory.create(maxConnections, maxConnectionsPerRoute, connectTimeout, readTimeout);
+        this.rs = new RestTemplate(requestFactory);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() throws Exception {
+        requestFactory.destroy();
+    }
+
     public CreateChannelRequest createChannel(CreateChannelRequest createChannelRequest, List<String> members) {
 
         String uri = rocketChatURL + "/api/v1/channels.create";
@@ -66,12 +130,8 @@ public class RocketChatService {
         headers.set("X-Auth-Token", createChannelRequest.getUserToken());
         HttpEntity<String> entity = new HttpEntity<String>(request.toString(), headers);
 
-        RestTemplate rs = new RestTemplate();
-
         try {
             ResponseEntity<String> response = rs.exchange(uri, HttpMethod.POST, entity, String.class);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
             CreateChannelResponse createChannelResponse = new CreateChannelResponse();
 
             createChannelResponse = mapper.readValue(response.getBody(), CreateChannelResponse.class);
@@ -94,7 +154,6 @@ public class RocketChatService {
      */
     public String checkIfChannelExist(CreateChannelRequest createChannelRequest) {
 
-        RestTemplate rs = new RestTemplate();
         String uri = chatServiceURL + "/channels";
 
         JSONObject request = new JSONObject();
@@ -109,8 +168,6 @@ public class RocketChatService {
         try {
             ResponseEntity<String> registerResponse = rs.exchange(uri, HttpMethod.POST, entity, String.class);
             if (registerResponse.getStatusCode().value() == 200) {
-                ObjectMapper mapper = new ObjectMapper();
-                mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
                 CreateChannelRequest rq = mapper.readValue(registerResponse.getBody(), CreateChannelRequest.class);
                 logger.info("Channel name : {} found in chat service", rq.getChannelName());
                 return rq.getChannelName();
@@ -131,7 +188,6 @@ public class RocketChatService {
      */
     public boolean persistChannelName(CreateChannelRequest createChannelRequest) {
 
-        RestTemplate rs = new RestTemplate();
         String uri = chatServiceURL + "/channel";
 
         JSONObject request = new JSONObject();
@@ -162,56 +218,138 @@ public class RocketChatService {
 
 
     /**
-     * This function will return the missing users in Rocket.Chat in a Map
+     * This function will return the Rocket.Chat usernames of the given members in a Map. Members missing in Rocket.Chat
+     * are mapped to null.
      *
-     * @param chatUsers
+     * @param initiatingParty
+     * @param respondingList
      * @return
      */
-    public Map<String, String> getMissingEmails(ChatUsers chatUsers, List<String> initiatingParty, List<String> respondingList) {
+    public Map<String, String> getMissingEmails(List<String> initiatingParty, List<String> respondingList) throws IOException {
         Map<String, String> emailUsernameMap = new HashMap<>();
 
-
         for (String m : initiatingParty) {
-            for (ChatUser c : chatUsers.getUsers()) {
-                if (null != c.getEmails()) {
-                    for (UserEmail e : c.getEmails()) {
-                        if (e.getAddress().equals(m)) {
-                            emailUsernameMap.put(e.getAddress(), c.getUsername());
-                        }
-                    }
-                }
-            }
+            emailUsernameMap.put(m, getUsername(m));
         }
-
         for (String m : respondingList) {
-            for (ChatUser c : chatUsers.getUsers()) {
-                if (null != c.getEmails()) {
-                    for (UserEmail e : c.getEmails()) {
-                        if (e.getAddress().equals(m)) {
-                            emailUsernameMap.put(e.getAddress(), c.getUsername());
-                        }
-                    }
-
-                }
-            }
+            emailUsernameMap.put(m, getUsername(m));
         }
 
-        for (String m : initiatingParty) {
-            emailUsernameMap.putIfAbsent(m, null);
+        return emailUsernameMap;
+    }
+
+    /**
+     * Returns the Rocket.Chat username of the given email address or null if there is no such user. Users missing in
+     * the local directory (e.g. created in Rocket.Chat directly since the last synchronization) are looked up in
+     * Rocket.Chat and added to the directory. Users missing in Rocket.Chat as well are remembered for a limited time.
+     *
+     * @param email
+     * @return
+     */
+    public String getUsername(String email) throws IOException {
+        String username = chatUserDirectory.getUsername(email);
+        if (username != null || chatUserDirectory.isMissing(email))
+            return username;
+
+        JSONObject query = new JSONObject();
+        query.put("emails.address", email);
+        String uri = rocketChatURL + "/api/v1/users.list?query={query}&fields={fields}";
+        ResponseEntity<String> response = exchangeAsAdmin(uri, HttpMethod.GET, null, query.toString(), "{\"username\":1,\"emails\":1}");
+        ChatUsers result = mapper.readValue(response.getBody(), ChatUsers.class);
+        if (result.getUsers() == null || result.getUsers().isEmpty() || result.getUsers().get(0).getUsername() == null) {
+            chatUserDirectory.putMissing(email);
+            return null;
         }
-        for (String m : respondingList) {
-            emailUsernameMap.putIfAbsent(m, null);
+
+        username = result.getUsers().get(0).getUsername();
+        chatUserDirectory.put(email, username);
+        return username;
+    }
+
+    /**
+     * Retrieves a page of the users of Rocket.Chat including their email addresses using the admin user.
+     *
+     * @param offset
+     * @param count
+     * @return
+     */
+    public ChatUsers listUsers(int offset, int count) throws IOException {
+        String uri = rocketChatURL + "/api/v1/users.list?offset={offset}&count={count}&fields={fields}";
+        ResponseEntity<String> response = exchangeAsAdmin(uri, HttpMethod.GET, null, offset, count, "{\"username\":1,\"emails\":1}");
+        return mapper.readValue(response.getBody(), ChatUsers.class);
+    }
+
+    /**
+     * Synchronizes the user directory once per interval on a single replica, the replica acquiring the lease of the
+     * interval.
+     */
+    @Scheduled(initialDelayString = "${nimble.rocketChat.directory.sync-initial-delay:30000}",
+            fixedDelayString = "${nimble.rocketChat.directory.sync-interval:3600000}")
+    public void scheduleDirectorySynchronization() {
+        if (!isChatEnabled)
+            return;
+
+        long now = System.currentTimeMillis();
+        String leaseName = DIRECTORY_SYNC_JOB + ":" + now / directorySyncInterval;
+        try {
+            if (!jobLeaseService.tryAcquire(leaseName, DIRECTORY_SYNC_LEASE))
+                return;
+        } catch (Exception e) {
+            logger.error("Failed to acquire lease of {}", leaseName, e);
+            return;
         }
 
-        return emailUsernameMap;
+        boolean completed = false;
+        try {
+            completed = synchronizeDirectory();
+        } finally {
+            // failed synchronizations are retried by the next replica
+            if (completed)
+                jobLeaseService.complete(leaseName);
+            else
+                jobLeaseService.release(leaseName);
+        }
+        try {
+            jobLeaseService.deleteExpired(DIRECTORY_SYNC_JOB + ":", new Date(now - DIRECTORY_SYNC_LEASE_RETENTION));
+        } catch (Exception e) {
+            logger.warn("Failed to remove expired leases of {}", DIRECTORY_SYNC_JOB, e);
+        }
     }
 
-    public ChatUsers listUsers() {
-        Credentials credentials = new Credentials();
-        credentials.setUsername(rocketChatUser);
-        credentials.setPassword(rocketChatPassword);
-        RocketChatLoginResponse rocketChatLoginResponse = loginOrCreateUser(new FrontEndUser(), credentials, false, false);
-        return listUsers(rocketChatLoginResponse.getData().getAuthToken(), rocketChatLoginResponse.getData().getUserId());
+    /**
+     * Synchronizes the local user directory (see {@link ChatUserDirectory}) with Rocket.Chat page by page, in order to
+     * detect users which were created or deleted in Rocket.Chat directly.
+     *
+     * @return true if the directory was synchronized
+     */
+    public boolean synchronizeDirectory() {
+        if (!isChatEnabled)
+            return false;
+
+        long startedAt = System.currentTimeMillis();
+        Map<String, String> chatUsers = new HashMap<>();
+        try {
+            int offset = 0;
+            List<ChatUser> page;
+            do {
+                ChatUsers result = listUsers(offset, directoryPageSize);
+                page = result.getUsers() != null ? result.getUsers() : Collections.emptyList();
+                for (ChatUser user : page) {
+                    if (user.getEmails() == null || user.getUsername() == null)
+                        continue;
+                    for (UserEmail userEmail : user.getEmails()) {
+                        if (userEmail.getAddress() != null)
+                            chatUsers.put(userEmail.getAddress(), user.getUsername());
+                    }
+                }
+                offset += page.size();
+            } while (page.size() == directoryPageSize);
+        } catch (Exception e) {
+            logger.error("Failed to retrieve the users of Rocket.Chat", e);
+            return false;
+        }
+        chatUserDirectory.synchronize(chatUsers, startedAt);
+        return true;
     }
 
     /**
@@ -232,12 +370,9 @@ public class RocketChatService {
         headers.set("X-Auth-Token", authToken);
         HttpEntity<String> entity = new HttpEntity<String>(headers);
 
-        RestTemplate rs = new RestTemplate();
         try {
 
             ResponseEntity<String> response = rs.exchange(uri, HttpMethod.GET, entity, String.class);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
             try {
                 chatUsers = mapper.readValue(response.getBody(), ChatUsers.class);
@@ -263,7 +398,6 @@ public class RocketChatService {
         RockerChatRegisterResponse rockerChatRegisterResponse = new RockerChatRegisterResponse();
 
         try {
-            RestTemplate rs = new RestTemplate();
             String uri = rocketChatURL + "/api/v1/users.register";
 
             String temp = credentials.getUsername().substring(credentials.getUsername().indexOf("@") + 1); // e.g. @google.com
@@ -286,13 +420,11 @@ public class RocketChatService {
 
 
             ResponseEntity<String> registerResponse = rs.exchange(uri, HttpMethod.POST, entity, String.class);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            rockerChatRegisterResponse = new RockerChatRegisterResponse();
             rockerChatRegisterResponse = mapper.readValue(registerResponse.getBody(), RockerChatRegisterResponse.class);
 
             if (rockerChatRegisterResponse.isSuccess() && null == rockerChatRegisterResponse.getError()) {
                 logger.info("A new user have been created in Rocket.Chat with username {}", rockerChatRegisterResponse.getUser().getUsername());
+                chatUserDirectory.put(credentials.getUsername(), rockerChatRegisterResponse.getUser().getUsername());
             }
 
             // If the user name already exists then a new user name should be created
@@ -317,54 +449,40 @@ public class RocketChatService {
      */
     public void deleteUser(String userEmailAddress) {
         // find the user for the given email address and delete it from Rocket.Chat
-        ChatUsers chatUsers = listUsers();
-        for (ChatUser user : chatUsers.getUsers()) {
-            if(user.getEmails() != null){
-                for (UserEmail userEmail : user.getEmails()) {
-                    if(userEmail.getAddress().contentEquals(userEmailAddress)){
-                        // delete the user from Rocket.Chat
-                        Credentials credentials = new Credentials();
-                        credentials.setUsername(rocketChatUser);
-                        credentials.setPassword(rocketChatPassword);
-                        RocketChatLoginResponse rocketChatLoginResponse = loginOrCreateUser(new FrontEndUser(), credentials, false, false);
-
-                        RestTemplate rs = new RestTemplate();
-                        String uri = rocketChatURL + "/api/v1/users.delete";
-
-                        HttpHeaders headers = new HttpHeaders();
-                        headers.setContentType(MediaType.APPLICATION_JSON);
-                        headers.set("X-User-Id", rocketChatLoginResponse.getData().getUserId());
-                        headers.set("X-Auth-Token", rocketChatLoginResponse.getData().getAuthToken());
-
-                        JSONObject request = new JSONObject();
-                        request.put(GlobalConstants.USER_NAME_STRING, user.getUsername());
-
-                        HttpEntity<String> entity = new HttpEntity<String>(request.toString(), headers);
-
-                        ResponseEntity<String> registerResponse = rs.exchange(uri, HttpMethod.POST, entity, String.class);
-                        ObjectMapper mapper = new ObjectMapper();
-                        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-                        try{
-                            RocketChatDeleteResponse rocketChatDeleteResponse = mapper.readValue(registerResponse.getBody(), RocketChatDeleteResponse.class);
-
-                            if (rocketChatDeleteResponse.isSuccess() && null == rocketChatDeleteResponse.getError()) {
-                                logger.info("The user with username {} is deleted from Rocket.Chat", user.getUsername());
-                            }
-
-                            if (!rocketChatDeleteResponse.isSuccess()) {
-                                String error = rocketChatDeleteResponse.getError() != null ? rocketChatDeleteResponse.getError(): "";
-                                logger.error("Failed to delete the user with username {} from Rocket.Chat {}", user.getUsername(),error);
-                            }
-
-                        }catch (Exception e){
-                            e.printStackTrace();
-                        }
-
-                        return;
-                    }
-                }
+        String username;
+        try {
+            username = getUsername(userEmailAddress);
+        } catch (Exception e) {
+            logger.error("Failed to look up the Rocket.Chat user of {}, user not deleted", userEmailAddress, e);
+            return;
+        }
+        if (username == null) {
+            logger.info("No Rocket.Chat user found for {}", userEmailAddress);
+            return;
+        }
+
+        String uri = rocketChatURL + "/api/v1/users.delete";
+
+        JSONObject request = new JSONObject();
+        request.put(GlobalConstants.USER_NAME_STRING, username);
+
+        ResponseEntity<String> registerResponse = exchangeAsAdmin(uri, HttpMethod.POST, request.toString());
+
+        try{
+            RocketChatDeleteResponse rocketChatDeleteResponse = mapper.readValue(registerResponse.getBody(), RocketChatDeleteResponse.class);
+
+            if (rocketChatDeleteResponse.isSuccess() && null == rocketChatDeleteResponse.getError()) {
+                logger.info("The user with username {} is deleted from Rocket.Chat", username);
+                chatUserDirectory.remove(userEmailAddress);
             }
+
+            if (!rocketChatDeleteResponse.isSuccess()) {
+                String error = rocketChatDeleteResponse.getError() != null ? rocketChatDeleteResponse.getError(): "";
+                logger.error("Failed to delete the user with username {} from Rocket.Chat {}", username,error);
+            }
+
+        }catch (Exception e){
+            e.printStackTrace();
         }
     }
 
@@ -381,27 +499,7 @@ public class RocketChatService {
         RocketChatLoginResponse rocketChatLoginResponse = new RocketChatLoginResponse();
 
         try {
-            RestTemplate rs = new RestTemplate();
-            String uri = rocketChatURL + "/api/v1/login";
-
-            JSONObject request = new JSONObject();
-            request.put(GlobalConstants.EMAIL_STRING, credentials.getUsername());
-            if (generatePass) {
-                request.put("password", new Md5PasswordEncoder().encodePassword(credentials.getUsername(), null).substring(0, 8));
-            } else {
-                request.put("password", credentials.getPassword());
-            }
-
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> entity = new HttpEntity<String>(request.toString(), headers);
-
-            ResponseEntity<String> loginResponse = rs.exchange(uri, HttpMethod.POST, entity, String.class);
-            rocketChatLoginResponse = mapper.readValue(loginResponse.getBody(), RocketChatLoginResponse.class);
-
+            rocketChatLoginResponse = login(credentials, generatePass);
         } catch (HttpStatusCodeException exception) {
             if (exception.getStatusCode().value() == 401 && createIfMissing) {
                 RockerChatRegisterResponse rockerChatRegisterResponse = registerUser(frontEndUser, credentials, false, 0);
@@ -415,7 +513,133 @@ public class RocketChatService {
         return rocketChatLoginResponse;
     }
 
+    /**
+     * Logs in a user to Rocket.Chat with the password derived from the username. Unlike
+     * {@link #loginOrCreateUser(FrontEndUser, Credentials, boolean, boolean)}, failures other than missing users are
+     * not hidden.
+     *
+     * @param credentials
+     * @return login response, without data if the user does not exist
+     */
+    public RocketChatLoginResponse loginUser(Credentials credentials) throws IOException {
+        try {
+            return login(credentials, true);
+        } catch (HttpStatusCodeException exception) {
+            if (exception.getStatusCode() == HttpStatus.UNAUTHORIZED)
+                return new RocketChatLoginResponse();
+            throw exception;
+        }
+    }
+
+    /**
+     * Registers a user in Rocket.Chat and logs it in.
+     *
+     * @param frontEndUser
+     * @param credentials
+     * @return login response or null if the user could not be registered
+     */
+    public RocketChatLoginResponse registerAndLoginUser(FrontEndUser frontEndUser, Credentials credentials) throws IOException {
+        RockerChatRegisterResponse rockerChatRegisterResponse = registerUser(frontEndUser, credentials, false, 0);
+        if (!rockerChatRegisterResponse.isSuccess())
+            return null;
+        return login(credentials, true);
+    }
+
+    /**
+     * Ends a session of a user in Rocket.Chat, e.g. if it is not delivered to the user.
+     *
+     * @param userId
+     * @param authToken
+     */
+    public void logout(String userId, String authToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-User-Id", userId);
+        headers.set("X-Auth-Token", authToken);
+        try {
+            rs.exchange(rocketChatURL + "/api/v1/logout", HttpMethod.POST, new HttpEntity<String>(headers), String.class);
+        } catch (Exception e) {
+            logger.warn("Failed to log out Rocket.Chat user {}", userId, e);
+        }
+    }
+
+    private RocketChatLoginResponse login(Credentials credentials, boolean generatePass) throws IOException {
+        String uri = rocketChatURL + "/api/v1/login";
+
+        JSONObject request = new JSONObject();
+        request.put(GlobalConstants.EMAIL_STRING, credentials.getUsername());
+        if (generatePass) {
+            request.put("password", new Md5PasswordEncoder().encodePassword(credentials.getUsername(), null).substring(0, 8));
+        } else {
+            request.put("password", credentials.getPassword());
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<String> entity = new HttpEntity<String>(request.toString(), headers);
+
+        ResponseEntity<String> loginResponse = rs.exchange(uri, HttpMethod.POST, entity, String.class);
+        RocketChatLoginResponse rocketChatLoginResponse = mapper.readValue(loginResponse.getBody(), RocketChatLoginResponse.class);
+        if (rocketChatLoginResponse.getData() != null && rocketChatLoginResponse.getData().getMe() != null
+                && rocketChatLoginResponse.getData().getMe().getUsername() != null)
+            chatUserDirectory.put(credentials.getUsername(), rocketChatLoginResponse.getData().getMe().getUsername());
+        return rocketChatLoginResponse;
+    }
+
     public boolean isChatEnabled() {
         return isChatEnabled;
     }
+
+    /**
+     * Sends a request using the session of the admin user. The session is created on first use and renewed once if
+     * Rocket.Chat rejects it, e.g. after it expired.
+     */
+    private ResponseEntity<String> exchangeAsAdmin(String uri, HttpMethod method, String body, Object... uriVariables) {
+        AdminSession session = getAdminSession();
+        try {
+            return rs.exchange(uri, method, session.createEntity(body), String.class, uriVariables);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.UNAUTHORIZED)
+                throw e;
+            logger.info("Session of Rocket.Chat admin user expired, logging in again");
+            invalidateAdminSession(session);
+            return rs.exchange(uri, method, getAdminSession().createEntity(body), String.class, uriVariables);
+        }
+    }
+
+    private synchronized AdminSession getAdminSession() {
+        if (adminSession == null) {
+            Credentials credentials = new Credentials();
+            credentials.setUsername(rocketChatUser);
+            credentials.setPassword(rocketChatPassword);
+            RocketChatLoginResponse rocketChatLoginResponse = loginOrCreateUser(new FrontEndUser(), credentials, false, false);
+            if (rocketChatLoginResponse.getData() == null)
+                throw new IllegalStateException("Failed to log in to Rocket.Chat as admin user");
+            adminSession = new AdminSession(rocketChatLoginResponse.getData().getUserId(), rocketChatLoginResponse.getData().getAuthToken());
+        }
+        return adminSession;
+    }
+
+    private synchronized void invalidateAdminSession(AdminSession session) {
+        if (adminSession == session)
+            adminSession = null;
+    }
+
+    private static class AdminSession {
+        private final String userId;
+        private final String authToken;
+
+        AdminSession(String userId, String authToken) {
+            this.userId = userId;
+            this.authToken = authToken;
+        }
+
+        HttpEntity<String> createEntity(String body) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set("X-User-Id", userId);
+            headers.set("X-Auth-Token", authToken);
+            return new HttpEntity<>(body, headers);
+        }
+    }
 }
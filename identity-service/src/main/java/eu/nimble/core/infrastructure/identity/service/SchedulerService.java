@@ -1,45 +1,80 @@
 package eu.nimble.core.infrastructure.identity.service;
 
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
 import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
 import eu.nimble.core.infrastructure.identity.entity.UaaUser;
+import eu.nimble.core.infrastructure.identity.entity.dto.PublishedItem;
+import eu.nimble.core.infrastructure.identity.entity.dto.PublishedItemPage;
 import eu.nimble.core.infrastructure.identity.mail.EmailService;
 import eu.nimble.core.infrastructure.identity.mail.model.SubscriptionSummary;
 import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
 import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
-import eu.nimble.core.infrastructure.identity.system.ControllerUtils;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.core.infrastructure.identity.utils.UblUtils;
 import eu.nimble.service.model.solr.Search;
-import eu.nimble.service.model.solr.item.ItemType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.ProductPublishSubscriptionType;
 import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
 import eu.nimble.utility.validation.NimbleRole;
-import org.apache.commons.collections.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 @Service
 public class SchedulerService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final String SUBSCRIPTION_JOB = "subscription-summaries";
+
+    // time after which leases of completed runs are removed
+    private static final long LEASE_RETENTION = 7 * 24 * 3600 * 1000L;
+
+    // maximum number of parties loaded per query
+    private static final int ID_CHUNK_SIZE = 1000;
+
     @Value("${nimble.default-token}")
     private String defaultToken;
 
+    // number of items retrieved from the index per request
+    @Value("${nimble.subscriptions.item-page-size:1000}")
+    private int itemPageSize;
+
+    @Value("${nimble.subscriptions.pool-size:4}")
+    private int digestPoolSize;
+
+    // number of digests handed to the mail service per transaction
+    @Value("${nimble.subscriptions.mail-batch-size:50}")
+    private int mailBatchSize;
+
+    // number of shards the subscribed parties are split into, shards are processed by different replicas if available
+    @Value("${nimble.subscriptions.shards:1}")
+    private int shards;
+
+    // time after which a shard can be taken over by another replica if the replica processing it failed
+    @Value("${nimble.subscriptions.lease:3600000}")
+    private long leaseDuration;
+
     @Autowired
     private EmailService emailService;
     @Autowired
@@ -53,14 +88,49 @@ public class SchedulerService {
     private KeycloakAdmin keycloakAdmin;
     @Autowired
     private PartyRepository partyRepository;
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    @Autowired
+    private SubscriptionIndexService subscriptionIndexService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaction;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private ExecutorService digestExecutor;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.digestExecutor = Executors.newFixedThreadPool(digestPoolSize);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() {
+        digestExecutor.shutdown();
+    }
 
     /**
      * Cron job running every day at 6 AM to notify companies about their subscriptions.
      * It will send an email which includes the urls for product details if there are some products which are published
      * in last 24 hours.
+     *
+     * The digests are built in stages: the published items are indexed by manufacturer and category once, the data of
+     * all subscribed parties is loaded in bulk, the digests are built in parallel and finally handed to the mail
+     * service in batches.
+     *
+     * The job runs once per day among all replicas. The subscribed parties are split into shards by their identifier
+     * and each shard is processed by the replica acquiring its lease (see {@link JobLeaseService}). Shards left over by
+     * failed replicas are taken over by later runs of the same day, e.g. if the cron expression triggers the job
+     * several times a day.
      * */
-    @Scheduled(cron = "0 0 6 ? * *")
-    @Transactional
+    @Scheduled(cron = "${nimble.subscriptions.cron:0 0 6 ? * *}")
     public void notifyCompaniesForSubscriptions() {
         // run the scheduler if and only if the default token is provided
         if (!defaultToken.contentEquals("")) {
@@ -68,106 +138,236 @@ public class SchedulerService {
             // get the date of yesterday
             DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
             Calendar cal = Calendar.getInstance();
+            String runId = String.format("%s:%s", SUBSCRIPTION_JOB, new SimpleDateFormat("yyyy-MM-dd").format(cal.getTime()));
             cal.add(Calendar.DATE, -1);
             String yesterday = dateFormat.format(cal.getTime());
 
-            // retrieve products published in the last 24 hours
-            eu.nimble.service.model.solr.SearchResult sr = indexingController.getNimbleIndexClient().searchItem(getSearchObjectForItems(yesterday), defaultToken);
-            List<Object> items = sr.getResult();
-
-            if (items.size() > 0) {
-                // retrieve all parties with subscriptions
-                List<PartyType> parties = partyRepository.findAllWithSubscriptions();
-                // retrieve the subscribed category uris
-                Set<String> categoryUris = new HashSet<>();
-                for (PartyType party : parties) {
-                    if (party.getProductPublishSubscription().getCategoryCode() != null) {
-                        categoryUris.addAll(party.getProductPublishSubscription().getCategoryCode().stream().map(codeType -> codeType.getValue()).collect(Collectors.toSet()));
-                    }
+            // shards are visited in random order, so that replicas running at the same time start with different shards
+            List<Integer> shardIds = IntStream.range(0, shards).boxed().collect(Collectors.toList());
+            Collections.shuffle(shardIds);
+
+            PublishedItems publishedItems = null;
+            for (int shard : shardIds) {
+                String leaseName = String.format("%s:%d/%d", runId, shard, shards);
+                if (!jobLeaseService.tryAcquire(leaseName, leaseDuration)) {
+                    logger.info("Skipping {} processed by another replica", leaseName);
+                    continue;
                 }
-                // retrieve the labels of subscribed categories
-                Map<String, String> categoryLabelMap = new HashMap<>();
-                sr = indexingController.getNimbleIndexClient().searchClass(getSearchObjectForCategories(categoryUris), defaultToken);
-                List<Object> categories = sr.getResult();
-                for (Object category : categories) {
-                    LinkedHashMap<String, Object> lmap = (LinkedHashMap<String, Object>) category;
-                    Map<String, String> languageMap = (Map<String, String>) lmap.get("label");
-                    String uri = (String) lmap.get("uri");
-                    String label = languageMap.get(NimbleConfigurationProperties.LanguageID.ENGLISH.toString());
-                    categoryLabelMap.put(uri, label);
+                try {
+                    // retrieve products published in the last 24 hours, indexed by manufacturer and category
+                    if (publishedItems == null)
+                        publishedItems = fetchPublishedItems(yesterday);
+                    if (publishedItems.size() > 0)
+                        notifySubscribers(publishedItems, shard);
+                    jobLeaseService.complete(leaseName);
+                } catch (Exception e) {
+                    logger.error("Failed to send the subscription summaries of {}", leaseName, e);
+                    jobLeaseService.release(leaseName);
                 }
-                for (PartyType party : parties) {
-                    // find the vat number for the party
-                    // it is required to check whitelist/blacklist for the company
-                    String vatNumber = getPartyVatNumber(party);
-                    // find the subscribed products for the company
-                    List<ItemType> products = getSubscribedProducts(vatNumber, items, party.getProductPublishSubscription());
-                    if (products.size() > 0) {
-                        try {
-                            // create the subscription summaries for company
-                            List<SubscriptionSummary> subscriptionMailModels = new ArrayList<>();
-                            // check company subscriptions
-                            for (String companyId : party.getProductPublishSubscription().getCompanyID()) {
-                                List<String> catalogueIds = products.stream().filter(itemType -> itemType.getManufacturerId().contentEquals(companyId))
-                                        .map(itemType -> itemType.getCatalogueId())
-                                        .collect(Collectors.toList());
-
-                                List<String> productIds = products.stream().filter(itemType -> itemType.getManufacturerId().contentEquals(companyId))
-                                        .map(itemType -> itemType.getManufactuerItemId())
-                                        .collect(Collectors.toList());
-
-                                if (productIds.size() > 0) {
-                                    PartyType company = partyRepository.findByHjid(Long.valueOf(companyId)).stream().findFirst().orElseThrow(ControllerUtils.CompanyNotFoundException::new);
-                                    String companyName = UblUtils.getName(company.getPartyName(), NimbleConfigurationProperties.LanguageID.ENGLISH);
-
-                                    subscriptionMailModels.add(new SubscriptionSummary(companyName, null, catalogueIds, productIds));
-                                }
-
-                            }
-                            // check category subscriptions
-                            for (CodeType codeType : party.getProductPublishSubscription().getCategoryCode()) {
-                                List<String> catalogueIds = products.stream().filter(itemType -> itemType.getClassificationUri().contains(codeType.getValue()))
-                                        .map(itemType -> itemType.getCatalogueId())
-                                        .collect(Collectors.toList());
-
-                                List<String> productIds = products.stream().filter(itemType -> itemType.getClassificationUri().contains(codeType.getValue()))
-                                        .map(itemType -> itemType.getManufactuerItemId())
-                                        .collect(Collectors.toList());
-
-                                if (productIds.size() > 0) {
-                                    subscriptionMailModels.add(new SubscriptionSummary(null, categoryLabelMap.get(codeType.getValue()), catalogueIds, productIds));
-                                }
-
-                            }
-                            // enrich party with roles
-                            identityService.enrichWithRoles(party);
-                            // retrieve the email addresses of users
-                            List<String> emails = new ArrayList<>();
-                            if (party.getPerson() != null) {
-                                // users with roles Monitor or Purchaser
-                                emails = party.getPerson().stream().filter(personType -> personType.getContact() != null && personType.getContact().getElectronicMail() != null)
-                                        .filter(personType -> personType.getRole().contains(NimbleRole.MONITOR.getName()) || personType.getRole().contains(NimbleRole.PURCHASER.getName()))
-                                        .map(personType -> personType.getContact().getElectronicMail()).collect(Collectors.toList());
-                                if (emails.size() == 0) {
-                                    // users with roles Company Admin, Legal Representative or Initial representative
-                                    emails = party.getPerson().stream().filter(personType -> personType.getContact() != null && personType.getContact().getElectronicMail() != null)
-                                            .filter(personType -> personType.getRole().contains(NimbleRole.COMPANY_ADMIN.getName()) || personType.getRole().contains(NimbleRole.LEGAL_REPRESENTATIVE.getName()) || personType.getRole().contains(NimbleRole.INITIAL_REPRESENTATIVE.getName()))
-                                            .map(personType -> personType.getContact().getElectronicMail()).collect(Collectors.toList());
-                                }
-                            }
-                            // send email
-                            if (emails.size() > 0) {
-                                emailService.sendSubscriptionSummary(emails, subscriptionMailModels, "en");
-                            }
-                        } catch (Exception e) {
-                            logger.error("Failed to send a subcription email to party: {}",party.getPartyIdentification().get(0).getID(), e);
-                        }
+            }
+
+            try {
+                // only the daily runs are removed, leases of one-off jobs record their completion
+                jobLeaseService.deleteExpired(SUBSCRIPTION_JOB + ":", new Date(System.currentTimeMillis() - LEASE_RETENTION));
+            } catch (Exception e) {
+                logger.warn("Failed to remove expired job leases", e);
+            }
+
+            logger.info("Completed the cron job to send emails to users for the subscriptions");
+        }
+    }
+
+    /**
+     * Sends the subscription summaries to the subscribed parties of the given shard.
+     * */
+    private void notifySubscribers(PublishedItems publishedItems, int shard) {
+        // load the subscribers with all required data at once
+        List<Subscriber> subscribers = readOnlyTransaction.execute(status -> loadSubscribers(publishedItems, shard));
+
+        // retrieve the labels of subscribed categories
+        Set<String> categoryUris = subscribers.stream().flatMap(subscriber -> subscriber.categoryUris.stream()).collect(Collectors.toSet());
+        Map<String, String> categoryLabelMap = getCategoryLabels(categoryUris);
+
+        // build the digests in parallel
+        List<CompletableFuture<Digest>> digestFutures = subscribers.stream()
+                .map(subscriber -> CompletableFuture.supplyAsync(() -> buildDigest(subscriber, publishedItems, categoryLabelMap), digestExecutor))
+                .collect(Collectors.toList());
+        List<Digest> digests = new ArrayList<>();
+        for (CompletableFuture<Digest> digestFuture : digestFutures) {
+            try {
+                Digest digest = digestFuture.join();
+                if (digest != null)
+                    digests.add(digest);
+            } catch (Exception e) {
+                logger.error("Failed to create a subscription summary", e);
+            }
+        }
+
+        // hand the digests to the mail service in batches
+        for (List<Digest> batch : Lists.partition(digests, mailBatchSize)) {
+            transaction.execute(status -> {
+                for (Digest digest : batch) {
+                    try {
+                        emailService.sendSubscriptionSummary(digest.emails, digest.summaries, "en");
+                    } catch (Exception e) {
+                        logger.error("Failed to send a subcription email to party: {}", digest.partyId, e);
                     }
                 }
+                return null;
+            });
+        }
+        logger.info("Sent subscription summaries to {} of {} subscribed parties in shard {}/{}", digests.size(), subscribers.size(), shard, shards);
+    }
+
+    /**
+     * Retrieves the items published since the given date page by page. Items are sorted by their id, which serves as
+     * cursor for the next page, and only the fields required for the summaries are retrieved.
+     * @param yesterday the date of yesterday
+     * @return the items indexed by manufacturer and category
+     * */
+    private PublishedItems fetchPublishedItems(String yesterday) {
+        PublishedItems publishedItems = new PublishedItems();
+        String cursor = null;
+        List<PublishedItem> page;
+        do {
+            PublishedItemPage result = indexingController.getNimbleIndexClient().searchPublishedItems(getSearchObjectForItems(yesterday, cursor), defaultToken);
+            if (result == null)
+                throw new IllegalStateException("Failed to retrieve published items from the indexing service");
+            page = result.getResult();
+            page.forEach(publishedItems::add);
+            if (page.isEmpty() == false) {
+                cursor = page.get(page.size() - 1).getUri();
+                if (cursor == null)
+                    logger.warn("Items without id, stopping after {} items", publishedItems.size());
             }
+        } while (page.size() == itemPageSize && cursor != null);
+        return publishedItems;
+    }
 
-            logger.info("Completed the cron job to send emails to users for the subscriptions");
+    /**
+     * Loads the parties subscribed to any of the published items including the data required for building their
+     * digests, i.e. vat numbers, recipients and the names of the subscribed manufacturers with new products.
+     * */
+    private List<Subscriber> loadSubscribers(PublishedItems publishedItems, int shard) {
+        // look up the parties of the shard subscribed to the manufacturers or categories of the items
+        Set<Long> partyIds = subscriptionIndexService.findSubscribers(publishedItems.getManufacturerIds(), publishedItems.getCategoryUris(), shards, shard);
+        List<PartyType> parties = new ArrayList<>();
+        for (List<Long> chunk : Iterables.partition(partyIds, ID_CHUNK_SIZE))
+            parties.addAll(partyRepository.findByHjidIn(chunk));
+        parties.removeIf(party -> party.getProductPublishSubscription() == null);
+        List<PersonType> persons = parties.stream()
+                .filter(party -> party.getPerson() != null)
+                .flatMap(party -> party.getPerson().stream())
+                .collect(Collectors.toList());
+
+        // enrich parties with roles of their members
+        identityService.enrichWithRoles(parties);
+
+        // retrieve the vat numbers of all users
+        // they are required to check whitelist/blacklist for the company
+        Map<Long, String> externalIds = new HashMap<>();
+        if (persons.isEmpty() == false) {
+            for (UaaUser uaaUser : uaaUserRepository.findByUblPersonIn(persons))
+                externalIds.put(uaaUser.getUBLPerson().getHjid(), uaaUser.getExternalID());
         }
+        Map<String, String> vatNumbers = keycloakAdmin.getUserAttribute(externalIds.values(), "vatin");
+
+        // retrieve the names of subscribed manufacturers with new products
+        Set<Long> manufacturerIds = parties.stream()
+                .flatMap(party -> party.getProductPublishSubscription().getCompanyID().stream())
+                .filter(publishedItems::hasManufacturer)
+                .map(Long::valueOf)
+                .collect(Collectors.toSet());
+        Map<String, String> manufacturerNames = new HashMap<>();
+        if (manufacturerIds.isEmpty() == false) {
+            for (PartyType manufacturer : partyRepository.findByHjidIn(manufacturerIds))
+                manufacturerNames.put(manufacturer.getHjid().toString(), UblUtils.getName(manufacturer.getPartyName(), NimbleConfigurationProperties.LanguageID.ENGLISH));
+        }
+
+        List<Subscriber> subscribers = new ArrayList<>();
+        for (PartyType party : parties) {
+            Subscriber subscriber = new Subscriber();
+            subscriber.partyId = party.getPartyIdentification().isEmpty() ? party.getHjid().toString() : party.getPartyIdentification().get(0).getID();
+            ProductPublishSubscriptionType subscription = party.getProductPublishSubscription();
+            for (String companyId : subscription.getCompanyID())
+                subscriber.manufacturers.put(companyId, manufacturerNames.get(companyId));
+            if (subscription.getCategoryCode() != null)
+                subscriber.categoryUris.addAll(subscription.getCategoryCode().stream().map(CodeType::getValue).collect(Collectors.toList()));
+            if (party.getPerson() != null) {
+                // vat number of the first member providing one
+                subscriber.vatNumber = party.getPerson().stream()
+                        .map(person -> vatNumbers.get(externalIds.get(person.getHjid())))
+                        .filter(Objects::nonNull)
+                        .findFirst().orElse(null);
+                subscriber.emails = getRecipients(party.getPerson());
+            }
+            subscribers.add(subscriber);
+        }
+        return subscribers;
+    }
+
+    /**
+     * Builds the digest of a subscriber from the indexed items.
+     * @return the digest or null if there are no new products or recipients
+     * */
+    private Digest buildDigest(Subscriber subscriber, PublishedItems publishedItems, Map<String, String> categoryLabelMap) {
+        if (subscriber.emails.isEmpty())
+            return null;
+
+        Digest digest = new Digest(subscriber.partyId, subscriber.emails);
+        // check company subscriptions
+        subscriber.manufacturers.forEach((companyId, companyName) -> {
+            List<PublishedItem> products = publishedItems.visibleItemsOfManufacturer(companyId, subscriber.vatNumber);
+            if (products.isEmpty())
+                return;
+            if (companyName == null) {
+                logger.warn("Subscribed company {} of party {} not found", companyId, subscriber.partyId);
+                return;
+            }
+            digest.add(companyName, null, products);
+        });
+        // check category subscriptions
+        for (String categoryUri : subscriber.categoryUris) {
+            List<PublishedItem> products = publishedItems.visibleItemsOfCategory(categoryUri, subscriber.vatNumber);
+            if (products.isEmpty() == false)
+                digest.add(null, categoryLabelMap.get(categoryUri), products);
+        }
+        return digest.summaries.isEmpty() ? null : digest;
+    }
+
+    /**
+     * Returns the email addresses of users with roles Monitor or Purchaser. If there are no such users, the addresses
+     * of users with roles Company Admin, Legal Representative or Initial Representative are returned.
+     * */
+    private static List<String> getRecipients(List<PersonType> persons) {
+        List<String> emails = persons.stream().filter(personType -> personType.getContact() != null && personType.getContact().getElectronicMail() != null)
+                .filter(personType -> personType.getRole().contains(NimbleRole.MONITOR.getName()) || personType.getRole().contains(NimbleRole.PURCHASER.getName()))
+                .map(personType -> personType.getContact().getElectronicMail()).collect(Collectors.toList());
+        if (emails.size() == 0) {
+            emails = persons.stream().filter(personType -> personType.getContact() != null && personType.getContact().getElectronicMail() != null)
+                    .filter(personType -> personType.getRole().contains(NimbleRole.COMPANY_ADMIN.getName()) || personType.getRole().contains(NimbleRole.LEGAL_REPRESENTATIVE.getName()) || personType.getRole().contains(NimbleRole.INITIAL_REPRESENTATIVE.getName()))
+                    .map(personType -> personType.getContact().getElectronicMail()).collect(Collectors.toList());
+        }
+        return emails;
+    }
+
+    /**
+     * Returns the english labels of the given categories by their uri.
+     * */
+    private Map<String, String> getCategoryLabels(Set<String> categoryUris) {
+        Map<String, String> categoryLabelMap = new HashMap<>();
+        if (categoryUris.isEmpty())
+            return categoryLabelMap;
+        eu.nimble.service.model.solr.SearchResult sr = indexingController.getNimbleIndexClient().searchClass(getSearchObjectForCategories(categoryUris), defaultToken);
+        List<Object> categories = sr.getResult();
+        for (Object category : categories) {
+            LinkedHashMap<String, Object> lmap = (LinkedHashMap<String, Object>) category;
+            Map<String, String> languageMap = (Map<String, String>) lmap.get("label");
+            String uri = (String) lmap.get("uri");
+            String label = languageMap.get(NimbleConfigurationProperties.LanguageID.ENGLISH.toString());
+            categoryLabelMap.put(uri, label);
+        }
+        return categoryLabelMap;
     }
 
     // helper functions
@@ -176,12 +376,18 @@ public class SchedulerService {
      * Returns {@link Search} for the items based on the given date.
      * It includes the query which searches for the items published in last 24 hours
      * @param yesterday the date of yesterday
-     * @return {@link Search} including the proper query to retrieve items published in last 24 hours
+     * @param cursor the id of the last item of the previous page or null for the first page
+     * @return {@link Search} including the proper query to retrieve a page of items published in last 24 hours
      * */
-    private eu.nimble.service.model.solr.Search getSearchObjectForItems(String yesterday) {
+    private eu.nimble.service.model.solr.Search getSearchObjectForItems(String yesterday, String cursor) {
         eu.nimble.service.model.solr.Search search = new Search();
-        search.setRows(Integer.MAX_VALUE);
-        search.setQuery(String.format("creationDate:[%s TO NOW]", yesterday));
+        search.setRows(itemPageSize);
+        String query = String.format("creationDate:[%s TO NOW]", yesterday);
+        if (cursor != null)
+            query += String.format(" AND id:{\"%s\" TO *]", cursor.replace("\\", "\\\\").replace("\"", "\\\""));
+        search.setQuery(query);
+        search.setSort(Collections.singletonList("id asc"));
+        search.setFieldList(PublishedItem.FIELDS);
         return search;
     }
 
@@ -198,59 +404,78 @@ public class SchedulerService {
     }
 
     /**
-     * Returns the vat number of party.
-     * @param party the party
-     * @return the vat number of party if exists, otherwise, it returns null.
+     * Items published in the last 24 hours, indexed by manufacturer and category.
      * */
-    private String getPartyVatNumber(PartyType party) {
-        if (party.getPerson() != null) {
-            for (PersonType person : party.getPerson()) {
-                Optional<UaaUser> uaaUser = uaaUserRepository.findByUblPerson(person).stream().findFirst();
-                if (uaaUser.isPresent()) {
-                    Map<String, List<String>> attributes = keycloakAdmin.getUserResource(uaaUser.get().getExternalID()).toRepresentation().getAttributes();
-                    if (attributes != null && attributes.containsKey("vatin")) {
-                        return attributes.get("vatin").get(0);
-                    }
-                }
-            }
+    private static class PublishedItems {
+        private final Map<String, List<PublishedItem>> itemsByManufacturer = new HashMap<>();
+        private final Map<String, List<PublishedItem>> itemsByCategory = new HashMap<>();
+        private int size = 0;
+
+        void add(PublishedItem item) {
+            if (item.getManufacturerId() != null)
+                itemsByManufacturer.computeIfAbsent(item.getManufacturerId(), key -> new ArrayList<>()).add(item);
+            for (String categoryUri : item.getClassificationUri())
+                itemsByCategory.computeIfAbsent(categoryUri, key -> new ArrayList<>()).add(item);
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Set<String> getManufacturerIds() {
+            return itemsByManufacturer.keySet();
+        }
+
+        Set<String> getCategoryUris() {
+            return itemsByCategory.keySet();
+        }
+
+        boolean hasManufacturer(String manufacturerId) {
+            return itemsByManufacturer.containsKey(manufacturerId);
+        }
+
+        List<PublishedItem> visibleItemsOfManufacturer(String manufacturerId, String vatNumber) {
+            return visibleItems(itemsByManufacturer.get(manufacturerId), vatNumber);
+        }
+
+        List<PublishedItem> visibleItemsOfCategory(String categoryUri, String vatNumber) {
+            return visibleItems(itemsByCategory.get(categoryUri), vatNumber);
+        }
+
+        private static List<PublishedItem> visibleItems(List<PublishedItem> items, String vatNumber) {
+            if (items == null)
+                return Collections.emptyList();
+            return items.stream().filter(item -> item.isVisibleTo(vatNumber)).collect(Collectors.toList());
         }
-        return null;
     }
 
     /**
-     * Returns the subscribed products for the given subscription.
-     * Vat number is required to handle whitelist/blacklist functionality.
-     * @param vatNumber the vat number of company.
-     * @param items the list of Solr Items
-     * @param productPublishSubscriptionType the company subscription
-     * @return the list of subscribed products
+     * Data of a party with subscriptions, detached from the persistence context.
      * */
-    private List<ItemType> getSubscribedProducts(String vatNumber, List<Object> items, ProductPublishSubscriptionType productPublishSubscriptionType) {
-        // retrieve subscribed category ids
-        List<String> subscribedCategoryIds = productPublishSubscriptionType.getCategoryCode().stream().map(codeType -> codeType.getValue()).collect(Collectors.toList());
-
-        List<ItemType> products = new ArrayList<>();
-        // for each item, check whether it is subscribed or not
-        for (Object item : items) {
-            LinkedHashMap<String, Object> lmap = (LinkedHashMap<String, Object>) item;
-            List<String> restrictedParties = (List<String>) lmap.get("restrictedParties");
-            List<String> permittedParties = (List<String>) lmap.get("permittedParties");
-            List<String> classificationUri = (List<String>) lmap.get("classificationUri");
-            String manufacturerId = (String) lmap.get("manufacturerId");
-            String manufacturerItemId = (String) lmap.get("manufactuerItemId");
-            String catalogueId = (String) lmap.get("catalogueId");
-            // consider the whitelist/blacklist of product, manufacturer id and product categories
-            if ((restrictedParties == null || !restrictedParties.contains(vatNumber)) && (permittedParties == null || permittedParties.contains(vatNumber))
-                    && (productPublishSubscriptionType.getCompanyID().contains(manufacturerId) || CollectionUtils.intersection(subscribedCategoryIds, classificationUri).size() > 0)) {
-                ItemType itemType = new ItemType();
-                itemType.setClassificationUri(classificationUri);
-                itemType.setCatalogueId(catalogueId);
-                itemType.setManufactuerItemId(manufacturerItemId);
-                itemType.setManufacturerId(manufacturerId);
-                products.add(itemType);
-            }
+    private static class Subscriber {
+        private String partyId;
+        private String vatNumber;
+        // names of subscribed manufacturers by id, null if not found
+        private final Map<String, String> manufacturers = new LinkedHashMap<>();
+        private final List<String> categoryUris = new ArrayList<>();
+        private List<String> emails = Collections.emptyList();
+    }
+
+    private static class Digest {
+        private final String partyId;
+        private final List<String> emails;
+        private final List<SubscriptionSummary> summaries = new ArrayList<>();
+
+        Digest(String partyId, List<String> emails) {
+            this.partyId = partyId;
+            this.emails = emails;
         }
 
-        return products;
+        void add(String companyName, String categoryName, List<PublishedItem> products) {
+            List<String> catalogueIds = products.stream().map(PublishedItem::getCatalogueId).collect(Collectors.toList());
+            List<String> productIds = products.stream().map(PublishedItem::getManufactuerItemId).collect(Collectors.toList());
+            summaries.add(new SubscriptionSummary(companyName, categoryName, catalogueIds, productIds));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import com.google.common.collect.Iterables;
+import eu.nimble.core.infrastructure.identity.entity.SubscriptionIndexEntry;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.SubscriptionIndexRepository;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.ProductPublishSubscriptionType;
+import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Maintains the inverted index of product publish subscriptions (see {@link SubscriptionIndexEntry}).
+ */
+@Service
+public class SubscriptionIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionIndexService.class);
+
+    private static final String BACKFILL_JOB = "subscription-index:backfill";
+
+    private static final long BACKFILL_LEASE = 3600000;
+
+    // maximum number of keys per lookup
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private SubscriptionIndexRepository subscriptionIndexRepository;
+
+    @Autowired
+    private PartyRepository partyRepository;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Updates the index entries of a party, e.g. after its subscriptions have changed.
+     */
+    public void updateEntries(PartyType party) {
+        Set<SubscriptionKey> keys = getSubscriptionKeys(party.getProductPublishSubscription());
+        List<SubscriptionIndexEntry> removed = new ArrayList<>();
+        for (SubscriptionIndexEntry entry : subscriptionIndexRepository.findByPartyHjid(party.getHjid())) {
+            if (keys.remove(new SubscriptionKey(entry.getType(), entry.getSubscribedKey())) == false)
+                removed.add(entry);
+        }
+        if (removed.isEmpty() == false)
+            subscriptionIndexRepository.delete(removed);
+
+        List<SubscriptionIndexEntry> added = new ArrayList<>();
+        for (SubscriptionKey key : keys)
+            added.add(new SubscriptionIndexEntry(key.type, key.value, party.getHjid()));
+        if (added.isEmpty() == false)
+            subscriptionIndexRepository.save(added);
+    }
+
+    public void deleteEntries(PartyType party) {
+        subscriptionIndexRepository.deleteByPartyHjid(party.getHjid());
+    }
+
+    /**
+     * Retrieves the parties of the given shard subscribed to any of the given companies or categories.
+     */
+    public Set<Long> findSubscribers(Collection<String> companyIds, Collection<String> categoryUris, int shards, int shard) {
+        Set<Long> partyIds = new HashSet<>();
+        for (List<String> chunk : Iterables.partition(companyIds, LOOKUP_CHUNK_SIZE))
+            partyIds.addAll(subscriptionIndexRepository.findSubscribers(SubscriptionIndexEntry.Type.COMPANY, chunk, shards, shard));
+        for (List<String> chunk : Iterables.partition(categoryUris, LOOKUP_CHUNK_SIZE))
+            partyIds.addAll(subscriptionIndexRepository.findSubscribers(SubscriptionIndexEntry.Type.CATEGORY, chunk, shards, shard));
+        return partyIds;
+    }
+
+    /**
+     * Indexes the subscriptions of all parties once, i.e. subscriptions existing before the introduction of the index.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillEntries() {
+        try {
+            if (!jobLeaseService.tryAcquire(BACKFILL_JOB, BACKFILL_LEASE))
+                return;
+        } catch (Exception ex) {
+            logger.error("Error while acquiring lease of subscription index backfill", ex);
+            return;
+        }
+
+        try {
+            int indexed = transactionTemplate.execute(status -> {
+                List<PartyType> parties = partyRepository.findAllWithSubscriptions();
+                parties.forEach(this::updateEntries);
+                return parties.size();
+            });
+            jobLeaseService.complete(BACKFILL_JOB);
+            logger.info("Indexed subscriptions of {} parties", indexed);
+        } catch (Exception ex) {
+            logger.error("Error while indexing subscriptions", ex);
+            jobLeaseService.release(BACKFILL_JOB);
+        }
+    }
+
+    private static Set<SubscriptionKey> getSubscriptionKeys(ProductPublishSubscriptionType subscription) {
+        Set<SubscriptionKey> keys = new HashSet<>();
+        if (subscription == null)
+            return keys;
+        for (String companyId : subscription.getCompanyID()) {
+            if (companyId != null)
+                keys.add(new SubscriptionKey(SubscriptionIndexEntry.Type.COMPANY, companyId));
+        }
+        if (subscription.getCategoryCode() != null) {
+            for (CodeType categoryCode : subscription.getCategoryCode()) {
+                if (categoryCode != null && categoryCode.getValue() != null)
+                    keys.add(new SubscriptionKey(SubscriptionIndexEntry.Type.CATEGORY, categoryCode.getValue()));
+            }
+        }
+        return keys;
+    }
+
+    private static class SubscriptionKey {
+        private final SubscriptionIndexEntry.Type type;
+        private final String value;
+
+        SubscriptionKey(SubscriptionIndexEntry.Type type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SubscriptionKey that = (SubscriptionKey) o;
+            return type == that.type && value.equals(that.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, value);
+        }
+    }
+}
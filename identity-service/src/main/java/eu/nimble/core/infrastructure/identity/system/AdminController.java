@@ -12,16 +12,15 @@ import eu.nimble.core.infrastructure.identity.messaging.KafkaSender;
 import eu.nimble.core.infrastructure.identity.repository.*;
 import eu.nimble.core.infrastructure.identity.service.AdminService;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
+import eu.nimble.core.infrastructure.identity.service.PartyIndexingService;
 import eu.nimble.core.infrastructure.identity.service.RocketChatService;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.core.infrastructure.identity.uaa.OAuthClient;
-import eu.nimble.core.infrastructure.identity.utils.DataModelUtils;
 import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
 import eu.nimble.core.infrastructure.identity.utils.LogEvent;
 import eu.nimble.service.model.solr.Search;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
-import eu.nimble.service.model.ubl.commonaggregatecomponents.QualifyingPartyType;
 import eu.nimble.utility.ExecutionContext;
 import eu.nimble.utility.LoggerUtils;
 import eu.nimble.utility.bp.BusinessWorkflowUtil;
@@ -32,8 +31,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -83,6 +80,9 @@ public class AdminController {
     @Autowired
     private IndexingClientController indexingController;
 
+    @Autowired
+    private PartyIndexingService partyIndexingService;
+
     @Autowired
     private CatalogueServiceClient catalogueServiceClient;
     @Autowired
@@ -101,19 +101,15 @@ public class AdminController {
     ResponseEntity<Page<PartyType>> getUnverifiedCompanies(@RequestParam(value = "page", required = false, defaultValue = "1") int pageNumber,
                                                            @RequestParam(value = "size", required = false, defaultValue = DEFAULT_PAGE_SIZE) int pageSize,
                                                            @RequestParam(value = "sortBy", required = false, defaultValue = GlobalConstants.PARTY_NAME_STRING) String sortBy,
-                                                           @RequestParam(value = "orderBy", required = false, defaultValue = GlobalConstants.ASCENDING_STRING) String orderBy){
+                                                           @RequestParam(value = "orderBy", required = false, defaultValue = GlobalConstants.ASCENDING_STRING) String orderBy,
+                                                           @ApiParam(value = "Id of the last company of the previous page. Replaces offset based paging if set.") @RequestParam(value = "after", required = false) Long afterPartyId){
 
         // ToDo: verify proper access policy (e.g. admin role)
 
         logger.info("Fetching unverified companies");
-        List<PartyType> unverifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.UNVERIFIED);
-
-        if(!orderBy.isEmpty())
-            adminService.sortCompanies(unverifiedCompanies, sortBy, orderBy);
+        Page<PartyType> unverifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.UNVERIFIED, sortBy, orderBy, pageNumber - 1, pageSize, afterPartyId);
 
-
-        // paginate results
-        return makePage(pageNumber, pageSize, unverifiedCompanies);
+        return makePage(unverifiedCompanies);
     }
 
     @ApiOperation(value = "Retrieve verified companies", response = Page.class)
@@ -121,16 +117,14 @@ public class AdminController {
     ResponseEntity<Page<PartyType>> getVerifiedCompanies(@RequestParam(value = "page", required = false, defaultValue = "1") int pageNumber,
                                                          @RequestParam(value = "size", required = false, defaultValue = DEFAULT_PAGE_SIZE) int pageSize,
                                                          @RequestParam(value = "sortBy", required = false, defaultValue = GlobalConstants.PARTY_NAME_STRING) String sortBy,
-                                                         @RequestParam(value = "orderBy", required = false, defaultValue = GlobalConstants.ASCENDING_STRING) String orderBy){
+                                                         @RequestParam(value = "orderBy", required = false, defaultValue = GlobalConstants.ASCENDING_STRING) String orderBy,
+                                                         @ApiParam(value = "Id of the last company of the previous page. Replaces offset based paging if set.") @RequestParam(value = "after", required = false) Long afterPartyId){
         // ToDo: verify proper access policy (e.g. admin role)
 
-        logger.info("Fetching unverified companies");
-        List<PartyType> verifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.VERIFIED);
+        logger.info("Fetching verified companies");
+        Page<PartyType> verifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.VERIFIED, sortBy, orderBy, pageNumber - 1, pageSize, afterPartyId);
 
-        if(!orderBy.isEmpty())
-            adminService.sortCompanies(verifiedCompanies, sortBy, orderBy);
-        // paginate results
-        return makePage(pageNumber, pageSize, verifiedCompanies);
+        return makePage(verifiedCompanies);
     }
 
     @ApiOperation(value = "Verify company")
@@ -170,15 +164,7 @@ public class AdminController {
 
             //index party
             PartyType company = partyRepository.findByHjid(companyId).stream().findFirst().orElseThrow(ControllerUtils.CompanyNotFoundException::new);
-            // retrieve qualifying party
-            QualifyingPartyType qualifyingParty = qualifyingPartyRepository.findByParty(company).stream().findFirst().get();
-            eu.nimble.service.model.solr.party.PartyType newParty = DataModelUtils.toIndexParty(company,qualifyingParty);
-            // the deleted companies are the ones which are already verified previously
-            newParty.setVerified(true);
-            List<IndexingClient> indexingClients = indexingController.getClients();
-            for (IndexingClient indexingClient : indexingClients) {
-                indexingClient.setParty(newParty, bearer);
-            }
+            partyIndexingService.enqueue(company, bearer);
             return ResponseEntity.ok().build();
         }else{
             return new ResponseEntity<>("Only company_admin, external_representative, "
@@ -409,10 +395,9 @@ public class AdminController {
         return ResponseEntity.ok().build();
     }
 
-    private ResponseEntity<Page<PartyType>> makePage(@RequestParam(value = "page", required = false, defaultValue = "1") int pageNumber, @RequestParam(value = "size", required = false, defaultValue = DEFAULT_PAGE_SIZE) int pageSize, List<PartyType> unverifiedCompanies) {
-        int start = (pageNumber - 1) * pageSize;
-        int end = (start + pageSize) > unverifiedCompanies.size() ? unverifiedCompanies.size() : (start + pageSize);
-        Page<PartyType> companyPage = new PageImpl<>(unverifiedCompanies.subList(start, end), new PageRequest(pageNumber - 1, pageSize), unverifiedCompanies.size());
+    private ResponseEntity<Page<PartyType>> makePage(Page<PartyType> companyPage) {
+        // roles of members are only resolved for the requested page, in one bulk lookup
+        identityService.enrichWithRoles(companyPage.getContent());
 
         return ResponseEntity.ok(companyPage);
     }
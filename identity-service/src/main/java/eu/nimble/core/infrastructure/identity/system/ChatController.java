@@ -1,13 +1,18 @@
 package eu.nimble.core.infrastructure.identity.system;
 
+import eu.nimble.core.infrastructure.identity.entity.UaaUser;
 import eu.nimble.core.infrastructure.identity.entity.dto.Credentials;
 import eu.nimble.core.infrastructure.identity.entity.dto.FrontEndUser;
 import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
 import eu.nimble.core.infrastructure.identity.repository.PersonRepository;
+import eu.nimble.core.infrastructure.identity.service.ChatSessionService;
+import eu.nimble.core.infrastructure.identity.service.IdentityService;
 import eu.nimble.core.infrastructure.identity.service.RocketChatService;
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.channel.CreateChannelRequest;
-import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.list.ChatUsers;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.ChatSession;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.register.RockerChatRegisterResponse;
+import eu.nimble.core.infrastructure.identity.utils.UblAdapter;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import io.swagger.annotations.ApiOperation;
@@ -21,14 +26,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Nirojan Selvanathan on 05.06.19.
@@ -40,6 +48,9 @@ public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
 
+    // maximum time a request waits for a pending chat session
+    private static final long MAX_SESSION_WAIT = 30000;
+
     @Autowired
     private PersonRepository personRepository;
 
@@ -49,6 +60,12 @@ public class ChatController {
     @Autowired
     private RocketChatService chatService;
 
+    @Autowired
+    private ChatSessionService chatSessionService;
+
+    @Autowired
+    private IdentityService identityService;
+
     @Value("${nimble.rocketChat.isEnabled}")
     private boolean isChatEnabled;
 
@@ -59,7 +76,7 @@ public class ChatController {
             @ApiResponse(code = 400, message = "Bad Request")})
     @RequestMapping(value = "/chat/createChannel", produces = {"application/json"}, consumes = {"application/json"}, method = RequestMethod.POST)
     ResponseEntity<CreateChannelRequest> createNegotiationChannel(
-            @ApiParam(value = "CreateChannelRequest creation request containing collaborating organization details", required = true) @RequestBody CreateChannelRequest createChannelRequest) {
+            @ApiParam(value = "CreateChannelRequest creation request containing collaborating organization details", required = true) @RequestBody CreateChannelRequest createChannelRequest) throws IOException {
 
         String channelName = chatService.checkIfChannelExist(createChannelRequest);
         // If a channel has been already created for this product return the channel name
@@ -101,11 +118,8 @@ public class ChatController {
 
         List<String> channelMembersUsernameList = new ArrayList<>();
 
-        // Get the list of the users in Rocket.Chat to obtain the user's Rocket.Chat username
-        ChatUsers chatUsers = chatService.listUsers();
-
-        // Find the users who are not yet registered in Rocket.Chat
-        Map<String, String> map = chatService.getMissingEmails(chatUsers, initiatingCompanyMembersList, respondingCompanyMembersList);
+        // Obtain the Rocket.Chat usernames of the members and find the users who are not yet registered in Rocket.Chat
+        Map<String, String> map = chatService.getMissingEmails(initiatingCompanyMembersList, respondingCompanyMembersList);
         for (Map.Entry<String, String> entry : map.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
@@ -122,6 +136,10 @@ public class ChatController {
                 c.setUsername(key);
 
                 RockerChatRegisterResponse rockerChatRegisterResponse = chatService.registerUser(frontEndUser, c, false, 0);
+                if (rockerChatRegisterResponse.getUser() == null) {
+                    logger.warn("Failed to register {} in Rocket.Chat, not adding the user to channel {}", key, channelName);
+                    continue;
+                }
                 map.put(key, rockerChatRegisterResponse.getUser().getUsername());
                 channelMembersUsernameList.add(rockerChatRegisterResponse.getUser().getUsername());
             }else {
@@ -132,4 +150,42 @@ public class ChatController {
         CreateChannelRequest channel = chatService.createChannel(createChannelRequest, channelMembersUsernameList);
         return new ResponseEntity<>(channel, HttpStatus.OK);
     }
+
+    @ApiOperation(value = "Retrieve the Rocket.Chat session of the current user", response = ChatSession.class,
+            notes = "Delivers the chat session created in the background after the login. The session is created if it was not started by the login.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Chat session created", response = ChatSession.class),
+            @ApiResponse(code = 202, message = "Chat session still pending"),
+            @ApiResponse(code = 404, message = "Chat not enabled"),
+            @ApiResponse(code = 503, message = "Chat session could not be created")})
+    @RequestMapping(value = "/chat/session", produces = {"application/json"}, method = RequestMethod.GET)
+    ResponseEntity<ChatSession> getChatSession(
+            @RequestHeader(value = "Authorization") String bearer,
+            @ApiParam(value = "Maximum time in milliseconds to wait for a pending chat session") @RequestParam(value = "wait", defaultValue = "10000") long wait) throws IOException {
+
+        if (!isChatEnabled)
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+        UaaUser uaaUser = identityService.getUserfromBearer(bearer);
+        if (uaaUser == null)
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+
+        CompletableFuture<RocketChatLoginResponse> session = chatSessionService.get(uaaUser.getExternalID(), UblAdapter.adaptUser(uaaUser, null));
+        try {
+            RocketChatLoginResponse rocketChatLoginResponse = session.get(Math.min(Math.max(wait, 0), MAX_SESSION_WAIT), TimeUnit.MILLISECONDS);
+            // auth tokens are not kept once delivered
+            chatSessionService.remove(uaaUser.getExternalID(), session);
+            return new ResponseEntity<>(new ChatSession(rocketChatLoginResponse.getData()), HttpStatus.OK);
+        } catch (TimeoutException e) {
+            return new ResponseEntity<>(HttpStatus.ACCEPTED);
+        } catch (ExecutionException e) {
+            logger.warn("Failed to create chat session of user {}", uaaUser.getUsername(), e.getCause());
+            // retried with the next request
+            chatSessionService.remove(uaaUser.getExternalID(), session);
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
 }
@@ -5,10 +5,9 @@ import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.JsonNode;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
-import eu.nimble.core.infrastructure.identity.clients.IndexingClient;
-import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
 import eu.nimble.core.infrastructure.identity.entity.CompanyDetailsUpdates;
 import eu.nimble.core.infrastructure.identity.entity.NegotiationSettings;
+import eu.nimble.core.infrastructure.identity.entity.ReindexJob;
 import eu.nimble.core.infrastructure.identity.entity.UaaUser;
 import eu.nimble.core.infrastructure.identity.entity.dto.CompanyDetails;
 import eu.nimble.core.infrastructure.identity.entity.dto.CompanySettings;
@@ -17,7 +16,11 @@ import eu.nimble.core.infrastructure.identity.messaging.KafkaSender;
 import eu.nimble.core.infrastructure.identity.repository.*;
 import eu.nimble.core.infrastructure.identity.service.AdminService;
 import eu.nimble.core.infrastructure.identity.service.CertificateService;
+import eu.nimble.core.infrastructure.identity.service.CompanyVerificationService;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
+import eu.nimble.core.infrastructure.identity.service.PartyIndexingService;
+import eu.nimble.core.infrastructure.identity.service.PartyReindexService;
+import eu.nimble.core.infrastructure.identity.service.SubscriptionIndexService;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.core.infrastructure.identity.utils.*;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.*;
@@ -26,12 +29,10 @@ import eu.nimble.service.model.ubl.commonbasiccomponents.CodeType;
 import eu.nimble.utility.ExecutionContext;
 import eu.nimble.utility.JsonSerializationUtility;
 import eu.nimble.utility.persistence.binary.BinaryContentService;
-import feign.Response;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.io.IOUtils;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,11 +94,20 @@ public class CompanySettingsController {
     private BinaryContentService binaryContentService = new BinaryContentService();
 
     @Autowired
-    private IndexingClientController indexingController;
+    private PartyIndexingService partyIndexingService;
+
+    @Autowired
+    private PartyReindexService partyReindexService;
 
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private CompanyVerificationService companyVerificationService;
+
+    @Autowired
+    private SubscriptionIndexService subscriptionIndexService;
+
     @Autowired
     private KeycloakAdmin keycloakAdmin;
 
@@ -116,7 +126,7 @@ public class CompanySettingsController {
             @ApiParam(value = "Id of company to retrieve settings from.", required = true) @PathVariable Long companyID) {
 
         // search relevant parties
-        PartyType company = partyRepository.findByHjid(companyID).stream().findFirst().orElseThrow(ControllerUtils.CompanyNotFoundException::new);
+        PartyType company = partyRepository.findWithDetailsByHjid(companyID).stream().findFirst().orElseThrow(ControllerUtils.CompanyNotFoundException::new);
 
         Optional<QualifyingPartyType> qualifyingPartyOptional = qualifyingPartyRepository.findByParty(company).stream().findFirst();
 
@@ -180,18 +190,11 @@ public class CompanySettingsController {
         existingCompany.getMostRecentItemsClassificationCode().addAll(recentlyUsedProductCategories);
 
         partyRepository.save(existingCompany);
+        companyVerificationService.updateSortKeys(existingCompany);
+        subscriptionIndexService.updateEntries(existingCompany);
 
-        eu.nimble.service.model.solr.party.PartyType indexedParty =  indexingController.getNimbleIndexClient().getParty(existingCompany.getHjid().toString(),bearer);
         //indexing the new company in the indexing service
-        eu.nimble.service.model.solr.party.PartyType party = DataModelUtils.toIndexParty(existingCompany,qualifyingParty);
-        if (indexedParty != null && indexedParty.getVerified()) {
-            party.setVerified(true);
-        }
-
-        List<IndexingClient> indexingClients = indexingController.getClients();
-        for(IndexingClient indexingClient : indexingClients){
-            indexingClient.setParty(party,bearer);
-        }
+        partyIndexingService.enqueue(existingCompany, bearer);
 
         newSettings = adaptCompanySettings(existingCompany, qualifyingParty);
 
@@ -249,13 +252,7 @@ public class CompanySettingsController {
         imageDocument.getAttachment().getEmbeddedDocumentBinaryObject().setUri(null); // reset uri (images are handled differently)
 
         //indexing logo image uri for the existing party
-        eu.nimble.service.model.solr.party.PartyType indexParty =  indexingController.getNimbleIndexClient().getParty(company.getHjid().toString(),bearer);
-        indexParty.setLogoId(imageDocument.getID());
-
-        List<IndexingClient> indexingClients = indexingController.getClients();
-        for(IndexingClient indexingClient : indexingClients){
-            indexingClient.setParty(indexParty,bearer);
-        }
+        partyIndexingService.enqueue(company, bearer);
 
         return ResponseEntity.ok(imageDocument);
     }
@@ -319,12 +316,7 @@ public class CompanySettingsController {
         }
 
         //removing logo image id from the indexed the party
-        eu.nimble.service.model.solr.party.PartyType indexParty =  indexingController.getNimbleIndexClient().getParty(company.getHjid().toString(),bearer);
-        indexParty.setLogoId("");
-        List<IndexingClient> indexingClients = indexingController.getClients();
-        for(IndexingClient indexingClient : indexingClients){
-            indexingClient.setParty(indexParty,bearer);
-        }
+        partyIndexingService.enqueue(company, bearer);
 
         return ResponseEntity.ok().build();
     }
@@ -396,20 +388,7 @@ public class CompanySettingsController {
         company.getCertificate().add(certificate);
         company = partyRepository.save(company);
         // index the party
-        Optional<QualifyingPartyType> qualifyingPartyTypeOptional = qualifyingPartyRepository.findByParty(company).stream().findFirst();
-        if(qualifyingPartyTypeOptional.isPresent()){
-            eu.nimble.service.model.solr.party.PartyType indexedParty =  indexingController.getNimbleIndexClient().getParty(company.getHjid().toString(),bearer);
-            //indexing the new company in the indexing service
-            eu.nimble.service.model.solr.party.PartyType party = DataModelUtils.toIndexParty(company,qualifyingPartyTypeOptional.get());
-            if (indexedParty != null && indexedParty.getVerified()) {
-                party.setVerified(true);
-            }
-
-            List<IndexingClient> indexingClients = indexingController.getClients();
-            for(IndexingClient indexingClient : indexingClients){
-                indexingClient.setParty(party,bearer);
-            }
-        }
+        partyIndexingService.enqueue(company, bearer);
         return ResponseEntity.ok(certificate);
     }
 
@@ -468,20 +447,7 @@ public class CompanySettingsController {
         // update list of certificates
         company = partyRepository.save(company);
         // index the party
-        Optional<QualifyingPartyType> qualifyingPartyTypeOptional = qualifyingPartyRepository.findByParty(company).stream().findFirst();
-        if(qualifyingPartyTypeOptional.isPresent()){
-            eu.nimble.service.model.solr.party.PartyType indexedParty =  indexingController.getNimbleIndexClient().getParty(company.getHjid().toString(),bearer);
-            //indexing the new company in the indexing service
-            eu.nimble.service.model.solr.party.PartyType party = DataModelUtils.toIndexParty(company,qualifyingPartyTypeOptional.get());
-            if (indexedParty != null && indexedParty.getVerified()) {
-                party.setVerified(true);
-            }
-
-            List<IndexingClient> indexingClients = indexingController.getClients();
-            for(IndexingClient indexingClient : indexingClients){
-                indexingClient.setParty(party,bearer);
-            }
-        }
+        partyIndexingService.enqueue(company, bearer);
 
         return ResponseEntity.ok().build();
     }
@@ -733,62 +699,31 @@ public class CompanySettingsController {
 
     /**
      * admin endpoint to reindex all valid parties in indexing service (for platform manager/admin purposes only)
-     * @return 200 OK
-     * @throws UnirestException
+     * @return 202 Accepted with the started (or already running) reindex job
      */
     @RequestMapping(value = "/reindexParties", produces = {"application/json"}, method = RequestMethod.GET)
     ResponseEntity<?> reindexAllCompanies(@RequestHeader(value = "Authorization") String bearer) throws IOException{
         if (identityService.hasAnyRole(bearer, PLATFORM_MANAGER) == false)
             return new ResponseEntity<>("Only platform managers are allowed to reindex all companies", HttpStatus.FORBIDDEN);
+        if (partyReindexService.isEnabled() == false)
+            return new ResponseEntity<>("No default token configured for reindexing in the background", HttpStatus.SERVICE_UNAVAILABLE);
         logger.debug("indexing all companies. ");
-        //adding verified and unverified companies with valid userRoles
-        List<PartyType> verifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.VERIFIED);
-        List<PartyType> unVerifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.UNVERIFIED);
-
-        for (PartyType party : verifiedCompanies) {
-            Optional<QualifyingPartyType> qualifyingPartyTypeOptional = qualifyingPartyRepository.findByParty(party).stream().findFirst();
-            if(qualifyingPartyTypeOptional.isPresent()){
-                QualifyingPartyType qualifyingPartyType = qualifyingPartyTypeOptional.get();
-                eu.nimble.service.model.solr.party.PartyType newParty = DataModelUtils.toIndexParty(party,qualifyingPartyType);
-                newParty.setVerified(true);
-                logger.info("Indexing verified party from database to index : " + newParty.getId() + " legalName : " + newParty.getLegalName());
-                List<IndexingClient> indexingClients = indexingController.getClients();
-                for(IndexingClient indexingClient : indexingClients) {
-                    Response response = indexingClient.setParty(newParty,bearer);
-                    if(response != null && response.status() == 200){
-                        logger.info("Indexed verified party from database to index : {} legalName : {} successfully",newParty.getId(), newParty.getLegalName());
-                    } else if(response == null){
-                        logger.error("Failed to index verified party from database to index : {} legalName : {} and response is null",newParty.getId(), newParty.getLegalName());
-                    }
-                    else {
-                        String responseBody = IOUtils.toString(response.body().asInputStream());
-                        logger.error("Failed to index verified party from database to index : {} legalName : {}, response body: {}",newParty.getId(), newParty.getLegalName(),responseBody);
-                    }
-                }
-            }
-        }
-        for (PartyType party : unVerifiedCompanies) {
-            Optional<QualifyingPartyType> qualifyingPartyTypeOptional = qualifyingPartyRepository.findByParty(party).stream().findFirst();
-            if(qualifyingPartyTypeOptional.isPresent()){
-                QualifyingPartyType qualifyingPartyType = qualifyingPartyTypeOptional.get();
-                eu.nimble.service.model.solr.party.PartyType newParty = DataModelUtils.toIndexParty(party,qualifyingPartyType);
-                logger.info("Indexing unverified party from database to index : " + newParty.getId() + " legalName : " + newParty.getLegalName());
-                List<IndexingClient> indexingClients = indexingController.getClients();
-                for (IndexingClient indexingClient : indexingClients) {
-                    Response response = indexingClient.setParty(newParty,bearer);
-                    if(response != null && response.status() == 200){
-                        logger.info("Indexed unverified party from database to index : {} legalName : {} successfully",newParty.getId(), newParty.getLegalName());
-                    } else if(response == null){
-                        logger.error("Failed to index unverified party from database to index : {} legalName : {} and response is null",newParty.getId(), newParty.getLegalName());
-                    }
-                    else {
-                        String responseBody = IOUtils.toString(response.body().asInputStream());
-                        logger.error("Failed to index unverified party from database to index : {} legalName : {}, response body: {}",newParty.getId(), newParty.getLegalName(),responseBody);                    }
-                }
-            }
-        }
+        ReindexJob job = partyReindexService.startJob();
+        if (job == null)
+            return new ResponseEntity<>("A reindex job is being started by another replica", HttpStatus.CONFLICT);
+        return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+    }
 
-        return new ResponseEntity<>("Completed indexing all companies", HttpStatus.OK);
+    @ApiOperation(value = "Get status and progress of a reindex job")
+    @RequestMapping(value = "/reindexParties/{jobId}", produces = {"application/json"}, method = RequestMethod.GET)
+    ResponseEntity<?> getReindexJob(@ApiParam(value = "Id of reindex job", required = true) @PathVariable Long jobId,
+                                    @RequestHeader(value = "Authorization") String bearer) throws IOException{
+        if (identityService.hasAnyRole(bearer, PLATFORM_MANAGER) == false)
+            return new ResponseEntity<>("Only platform managers are allowed to view reindex jobs", HttpStatus.FORBIDDEN);
+        ReindexJob job = partyReindexService.getJob(jobId);
+        if (job == null)
+            return new ResponseEntity<>("Reindex job not found", HttpStatus.NOT_FOUND);
+        return ResponseEntity.ok(job);
     }
 
 
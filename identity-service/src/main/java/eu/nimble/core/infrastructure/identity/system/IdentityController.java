@@ -3,8 +3,6 @@ package eu.nimble.core.infrastructure.identity.system;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.interfaces.Claim;
 import eu.nimble.core.infrastructure.identity.clients.DelegateServiceClient;
-import eu.nimble.core.infrastructure.identity.clients.IndexingClient;
-import eu.nimble.core.infrastructure.identity.clients.IndexingClientController;
 import eu.nimble.core.infrastructure.identity.config.FederationConfig;
 import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
 import eu.nimble.core.infrastructure.identity.constants.GlobalConstants;
@@ -13,14 +11,17 @@ import eu.nimble.core.infrastructure.identity.entity.UserInvitation;
 import eu.nimble.core.infrastructure.identity.entity.dto.*;
 import eu.nimble.core.infrastructure.identity.mail.EmailService;
 import eu.nimble.core.infrastructure.identity.repository.*;
+import eu.nimble.core.infrastructure.identity.service.AdminService;
+import eu.nimble.core.infrastructure.identity.service.CompanyVerificationService;
 import eu.nimble.core.infrastructure.identity.service.FederationService;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
+import eu.nimble.core.infrastructure.identity.service.LoginPipeline;
+import eu.nimble.core.infrastructure.identity.service.PartyIndexingService;
 import eu.nimble.core.infrastructure.identity.service.RocketChatService;
 import eu.nimble.core.infrastructure.identity.system.dto.CompanyRegistrationResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.UserRegistration;
 import eu.nimble.core.infrastructure.identity.system.dto.federation.FederationResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.oauth.Token;
-import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
 import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.sso.RocketChatResponse;
 import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
 import eu.nimble.core.infrastructure.identity.uaa.OAuthClient;
@@ -117,11 +118,17 @@ public class IdentityController {
     @Autowired
     private RocketChatService chatService;
 
+    @Autowired
+    private LoginPipeline loginPipeline;
+
     @Autowired
     private FederationService federationService;
 
     @Autowired
-    private IndexingClientController indexingController;
+    private PartyIndexingService partyIndexingService;
+
+    @Autowired
+    private CompanyVerificationService companyVerificationService;
 
 
     @ApiOperation(value = "Provide Nimble Token for a trusted identity provider token.", tags = {})
@@ -267,7 +274,7 @@ public class IdentityController {
         }
 
         // check identity database
-        UaaUser potentialUser = uaaUserRepository.findByExternalID(keycloakUserID);
+        UaaUser potentialUser = uaaUserRepository.findWithPersonByExternalID(keycloakUserID);
         if (potentialUser == null) {
 
             logger.info("User " + email + " not found in local database, but on Keycloak.");
@@ -297,7 +304,7 @@ public class IdentityController {
 
         }else {
             // create front end user DTO
-            List<PartyType> companies = partyRepository.findByPerson(potentialUser.getUBLPerson());
+            List<PartyType> companies = partyRepository.findWithNamesByPerson(potentialUser.getUBLPerson());
             frontEndUser = UblAdapter.adaptUser(potentialUser, companies);
 
             // set and store tokens
@@ -495,6 +502,7 @@ public class IdentityController {
         try {
             String keyCloakId = getKeycloakUserId(userParty);
             keycloakAdmin.addRole(keyCloakId, KeycloakAdmin.INITIAL_REPRESENTATIVE_ROLE);
+            companyVerificationService.updateState(newCompany, AdminService.CompanyState.UNVERIFIED);
         } catch (Exception e) {
             logger.error("Could not set role for user " + userParty.getID(), e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -518,11 +526,7 @@ public class IdentityController {
         }
 
         //indexing the new company in the indexing service
-        eu.nimble.service.model.solr.party.PartyType newParty = DataModelUtils.toIndexParty(newCompany,qualifyingParty);
-        List<IndexingClient> indexingClients = indexingController.getClients();
-        for (IndexingClient indexingClient : indexingClients) {
-            indexingClient.setParty(newParty, bearer);
-        }
+        partyIndexingService.enqueue(newCompany, bearer);
 
         String companyName = ublUtils.getName(newCompany);
         String companyId = String.valueOf(companyRegistration.getCompanyID());
@@ -585,26 +589,21 @@ public class IdentityController {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
-        // check identity database
-        UaaUser potentialUser = uaaUserRepository.findByExternalID(keycloakUserID);
-        if (potentialUser == null) {
-            logger.info("User " + credentials.getUsername() + " not found in local database, but on Keycloak.");
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
-
-        Set<String> roles = keycloakAdmin.getUserRoles(keycloakUserID);
-        Iterator<String> iterator = roles.iterator();
-
-        while (iterator.hasNext()){
-            if(iterator.next().equals(KeycloakAdmin.NIMBLE_DELETED_USER)){
+        // check identity database and roles, log in to chat
+        LoginPipeline.Result loginResult = loginPipeline.login(keycloakUserID, credentials);
+        switch (loginResult.getStatus()) {
+            case USER_NOT_FOUND:
+                logger.info("User " + credentials.getUsername() + " not found in local database, but on Keycloak.");
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            case USER_DELETED:
                 logger.info("User " + credentials.getUsername() + " user already deleted from the platform.");
                 return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
-            }
+            case TIMEOUT:
+                return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         }
 
         // create front end user DTO
-        List<PartyType> companies = partyRepository.findByPerson(potentialUser.getUBLPerson());
-        FrontEndUser frontEndUser = UblAdapter.adaptUser(potentialUser, companies);
+        FrontEndUser frontEndUser = loginResult.getFrontEndUser();
 
         // set and store tokens
         frontEndUser.setAccessToken(accessToken.getValue());
@@ -615,12 +614,6 @@ public class IdentityController {
         if(!companyClaim.isNull()){
             frontEndUser.setVat(companyClaim.asMap().get("vatin").toString());
         }
-        if(chatService.isChatEnabled()){
-            RocketChatLoginResponse rocketChatToken = chatService.loginOrCreateUser(frontEndUser, credentials, true, true);
-            frontEndUser.setRocketChatToken(rocketChatToken.getData().getAuthToken());
-            frontEndUser.setRocketChatUsername(rocketChatToken.getData().getMe().getUsername());
-            frontEndUser.setRocketChatUserID(rocketChatToken.getData().getUserId());
-        }
 
         Map<String,String> paramMap = new HashMap<String, String>();
         paramMap.put("userId",credentials.getUsername());
@@ -685,7 +678,7 @@ public class IdentityController {
     @RequestMapping(value = "/user-info", produces = {"application/json"}, method = RequestMethod.GET)
     ResponseEntity<?> getUserInfo(@RequestHeader(value = "Authorization") String bearer) throws IOException {
 
-        OpenIdConnectUserDetails userDetails = OpenIdConnectUserDetails.fromBearer(bearer);
+        OpenIdConnectUserDetails userDetails = identityService.getUserDetails(bearer);
 
         String username = userDetails.getUsername();
         Optional<UaaUser> potentialUaaUser = uaaUserRepository.findByUsername(username).stream().findFirst();
@@ -68,7 +68,7 @@ public class InvitationController {
             @RequestHeader(value = "Authorization") String bearer,
             HttpServletRequest request) throws IOException {
 
-        OpenIdConnectUserDetails userDetails = OpenIdConnectUserDetails.fromBearer(bearer);
+        OpenIdConnectUserDetails userDetails = identityService.getUserDetails(bearer);
         if (identityService.hasAnyRole(bearer, OAuthClient.Role.LEGAL_REPRESENTATIVE, OAuthClient.Role.PLATFORM_MANAGER) ==
                 false || identityService.hasAnyRole(bearer,NIMBLE_DELETED_USER) == true)
             return new ResponseEntity<>("Only legal representatives and not deleted member are allowed to invite users"
@@ -189,16 +189,18 @@ public class InvitationController {
                 .forEach(members::add);;
 
         // update roles
+        Map<UserInvitation, String> memberUserIds = new HashMap<>();
         for (UserInvitation member : members) {
             if (member.getPending() == false) {
                 String username = member.getEmail();
                 UaaUser uaaUser = uaaUserRepository.findOneByUsername(username);
-                if (uaaUser != null) {
-                    Set<String> roles = keycloakAdmin.getUserRoles(uaaUser.getExternalID(), KeycloakAdmin.NON_ASSIGNABLE_ROLES);
-                    member.setRoleIDs(new ArrayList<>(roles));
-                }
+                if (uaaUser != null)
+                    memberUserIds.put(member, uaaUser.getExternalID());
             }
         }
+        // members whose roles could not be resolved (e.g. deleted in Keycloak) are listed without roles
+        Map<String, Set<String>> memberRoles = keycloakAdmin.getUserRoles(memberUserIds.values(), KeycloakAdmin.NON_ASSIGNABLE_ROLES);
+        memberUserIds.forEach((member, userId) -> member.setRoleIDs(new ArrayList<>(memberRoles.getOrDefault(userId, Collections.emptySet()))));
 
         return new ResponseEntity<>(members, HttpStatus.OK);
     }
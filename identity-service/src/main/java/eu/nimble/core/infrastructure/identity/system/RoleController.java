@@ -74,7 +74,7 @@ public class RoleController {
         logger.info("Requesting roles of user {}", username);
 
         // Check if requesting user is legal representative
-        OpenIdConnectUserDetails userDetails = OpenIdConnectUserDetails.fromBearer(bearer);
+        OpenIdConnectUserDetails userDetails = identityService.getUserDetails(bearer);
         if (identityService.hasAnyRole(bearer, OAuthClient.Role.LEGAL_REPRESENTATIVE) == false)
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
@@ -113,7 +113,7 @@ public class RoleController {
         logger.info("Setting roles {} of user {}", rolesToApply, username);
 
         // Check if requesting user is legal representative
-        OpenIdConnectUserDetails userDetails = OpenIdConnectUserDetails.fromBearer(bearer);
+        OpenIdConnectUserDetails userDetails = identityService.getUserDetails(bearer);
         if (identityService.hasAnyRole(bearer, OAuthClient.Role.LEGAL_REPRESENTATIVE) == false)
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
@@ -45,9 +45,7 @@ public class StatisticsController {
 
         long numUsers = personRepository.count();
 
-        List<PartyType> verifiedCompanies = adminService.queryCompanies(AdminService.CompanyState.VERIFIED);
-
-        long numParties = verifiedCompanies.size();
+        long numParties = adminService.countCompanies(AdminService.CompanyState.VERIFIED);
 
         PlatformIdentityStatistics statistics = new PlatformIdentityStatistics(numUsers, numParties);
 
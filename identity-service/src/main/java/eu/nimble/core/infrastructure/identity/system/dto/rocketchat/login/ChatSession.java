@@ -0,0 +1,43 @@
+package eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login;
+
+/**
+ * Rocket.Chat session of a user, delivered after the login if chat sessions are created asynchronously.
+ */
+public class ChatSession {
+    private String rocketChatToken;
+    private String rocketChatUsername;
+    private String rocketChatUserID;
+
+    public ChatSession() {
+    }
+
+    public ChatSession(RocketChatLoginResponseData data) {
+        this.rocketChatToken = data.getAuthToken();
+        this.rocketChatUsername = data.getMe() != null ? data.getMe().getUsername() : null;
+        this.rocketChatUserID = data.getUserId();
+    }
+
+    public String getRocketChatToken() {
+        return rocketChatToken;
+    }
+
+    public void setRocketChatToken(String rocketChatToken) {
+        this.rocketChatToken = rocketChatToken;
+    }
+
+    public String getRocketChatUsername() {
+        return rocketChatUsername;
+    }
+
+    public void setRocketChatUsername(String rocketChatUsername) {
+        this.rocketChatUsername = rocketChatUsername;
+    }
+
+    public String getRocketChatUserID() {
+        return rocketChatUserID;
+    }
+
+    public void setRocketChatUserID(String rocketChatUserID) {
+        this.rocketChatUserID = rocketChatUserID;
+    }
+}
@@ -1,6 +1,7 @@
 package eu.nimble.core.infrastructure.identity.system.ubl;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import eu.nimble.core.infrastructure.identity.config.NimbleConfigurationProperties;
 import eu.nimble.core.infrastructure.identity.service.AdminService;
@@ -10,6 +11,7 @@ import eu.nimble.core.infrastructure.identity.repository.PersonRepository;
 import eu.nimble.core.infrastructure.identity.repository.QualifyingPartyRepository;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
 import eu.nimble.core.infrastructure.identity.uaa.OAuthClient;
+import eu.nimble.core.infrastructure.identity.utils.JsonStreaming;
 import eu.nimble.core.infrastructure.identity.utils.UblAdapter;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
@@ -21,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
@@ -29,6 +32,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -37,7 +41,9 @@ import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -69,6 +75,9 @@ public class PartyController {
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @SuppressWarnings("PointlessBooleanExpression")
     @ApiOperation(value = "", notes = "Get Party for Id.", response = PartyType.class, tags = {})
     @RequestMapping(value = "/party/{partyId}", method = RequestMethod.GET)
@@ -97,15 +106,23 @@ public class PartyController {
     @RequestMapping(value = "/parties/all", method = RequestMethod.GET)
     ResponseEntity<Page<PartyType>> getAllParties(@RequestParam(value = "Zero-indexed page", required = false, defaultValue = "0") int pageNumber,
                                                   @ApiParam(value = "Switch for including roles of persons in response (slower)") @RequestParam(required = false) boolean includeRoles,
-                                                  @RequestParam(value = "size", required = false, defaultValue = "10") int pageSize) {
+                                                  @RequestParam(value = "size", required = false, defaultValue = "10") int pageSize,
+                                                  @ApiParam(value = "Id of the last party of the previous page. Replaces offset based paging if set, parties are then ordered by id.") @RequestParam(value = "after", required = false) Long afterPartyId) {
 
         logger.debug("Requesting all parties page {}", pageNumber);
 
-        Page<PartyType> partyPage = partyRepository.findAll(new PageRequest(pageNumber, pageSize, new Sort(Sort.Direction.ASC, "partyName")));
+        Page<PartyType> partyPage;
+        if (afterPartyId != null) {
+            // keyset pagination, the cost of a page does not grow with its position
+            List<PartyType> parties = partyRepository.findByHjidGreaterThanOrderByHjidAsc(afterPartyId, new PageRequest(0, pageSize));
+            partyPage = new PageImpl<>(parties, new PageRequest(pageNumber, pageSize), partyRepository.count());
+        } else {
+            partyPage = partyRepository.findAll(new PageRequest(pageNumber, pageSize, new Sort(Sort.Direction.ASC, "partyName")));
+        }
 
-        // fetch and include roles
+        // fetch and include roles of all members at once
         if (includeRoles)
-            partyPage.getContent().forEach(identityService::enrichWithRoles);
+            identityService.enrichWithRoles(partyPage.getContent());
 
         return new ResponseEntity<>(partyPage, HttpStatus.OK);
     }
@@ -119,17 +136,13 @@ public class PartyController {
 
         logger.debug("Requesting parties with Ids {}", partyIds);
 
-        // search relevant parties
-        List<PartyType> parties = new ArrayList<>();
-        for (Long partyId : partyIds) {
-            Optional<PartyType> party = partyRepository.findByHjid(partyId).stream().findFirst();
-
-            // check if party was found
-            if (party.isPresent() == true) {
-                parties.add(party.get());
-
-            }
-        }
+        // search relevant parties and keep requested order
+        Map<Long, PartyType> foundParties = partyRepository.findByHjidIn(partyIds).stream()
+                .collect(Collectors.toMap(PartyType::getHjid, Function.identity()));
+        List<PartyType> parties = partyIds.stream()
+                .map(foundParties::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
 
         if(parties.size() == 0){
             String message = String.format("Requested party with Id's not found");
@@ -138,7 +151,7 @@ public class PartyController {
         }
         if (includeRoles)
             // fetch and include roles
-            parties.forEach(identityService::enrichWithRoles);
+            identityService.enrichWithRoles(parties);
 
         logger.debug("Returning requested parties with Ids {}", partyIds);
         return new ResponseEntity<>(parties, HttpStatus.OK);
@@ -221,35 +234,30 @@ public class PartyController {
                     " are sorted in the descending order of that.") @RequestParam(value = "dateSortAsc", required = false) Boolean sortAsc,
             @ApiParam(value = "Whether the company is deleted or not ") @RequestParam(value = "deleted", required = false) Boolean deleted) {
 
-        List<PartyTuple> partyIds;
-
-        if(deleted != null){
-            partyIds = StreamSupport.stream(partyRepository.findAll().spliterator(), false)
-                    .filter(p -> deleted == p.isDeleted())
-                    .map(p -> new PartyTuple(UblAdapter.adaptPartyIdentifier(p), UblAdapter.adaptPartyNames(p.getPartyName()),adaptPartyCreationDate(p)))
-                    .collect(Collectors.toList());
-        } else{
-            partyIds = StreamSupport.stream(partyRepository.findAll().spliterator(), false)
-                    .filter(p -> p.getPerson().isEmpty() == false) // exclude parties with no members (might be deleted)
-                    .map(p -> new PartyTuple(UblAdapter.adaptPartyIdentifier(p), UblAdapter.adaptPartyNames(p.getPartyName()),adaptPartyCreationDate(p)))
-                    .collect(Collectors.toList());
-        }
-        if (exclude != null)
-            partyIds = partyIds.stream().filter(p -> !exclude.contains(p.getCompanyID())).collect(Collectors.toList());
-        // sort the result based on the company registration date
-        if(sortAsc != null){
-            if(sortAsc){
-                partyIds = partyIds.stream()
-                        .sorted(Comparator.comparing(PartyTuple::getDate, Comparator.nullsLast(Comparator.naturalOrder()))).collect(Collectors.toList());
-            }
-            else{
-                partyIds = partyIds.stream()
-                        .sorted(Comparator.comparing(PartyTuple::getDate, Comparator.nullsLast(Comparator.reverseOrder()))).collect(Collectors.toList());
-            }
-        }
+        // exclusion and sorting are applied by the database
+        List<PartyTuple> partyIds = partyRepository.findPartySummaries(deleted, exclude, sortAsc).stream()
+                .map(p -> new PartyTuple(p.getCompanyID(), p.getNames(), adaptPartyCreationDate(p.getCreationDate())))
+                .collect(Collectors.toList());
+
         return ResponseEntity.ok(partyIds);
     }
 
+    @ApiOperation(value = "Stream all party ids, names and registration dates as newline delimited JSON.",
+            notes = "Same as /party/all, but parties are written while being read from the database. Enabled by stream=true.",
+            response = PartyTuple.class, responseContainer = "List")
+    @RequestMapping(value = "/party/all", params = "stream=true", method = RequestMethod.GET)
+    ResponseEntity<StreamingResponseBody> streamAllPartyIds(
+            @ApiParam(value = "Excluded ids") @RequestParam(value = "exclude", required = false) List<String> exclude,
+            @ApiParam(value = "Sort option for company registration date. If it is true, they are sorted in the ascending order of registration date.If it is false, they" +
+                    " are sorted in the descending order of that.") @RequestParam(value = "dateSortAsc", required = false) Boolean sortAsc,
+            @ApiParam(value = "Whether the company is deleted or not ") @RequestParam(value = "deleted", required = false) Boolean deleted) {
+
+        StreamingResponseBody body = JsonStreaming.<PartyTuple>ndjson(objectMapper, consumer ->
+                partyRepository.streamPartySummaries(deleted, exclude, sortAsc,
+                        p -> consumer.accept(new PartyTuple(p.getCompanyID(), p.getNames(), adaptPartyCreationDate(p.getCreationDate())))));
+        return ResponseEntity.ok().contentType(JsonStreaming.APPLICATION_NDJSON).body(body);
+    }
+
     //new method to retrieve verified company Ids
     @ApiOperation(value = "Get verified party ids. Returns id list.",
             response = String.class, responseContainer = "List")
@@ -264,6 +272,20 @@ public class PartyController {
         return ResponseEntity.ok(partyIds);
     }
 
+    @ApiOperation(value = "Stream verified party ids as newline delimited JSON.", notes = "Enabled by stream=true.", response = String.class, responseContainer = "List")
+    @RequestMapping(value = "/party/verified", params = "stream=true", method = RequestMethod.GET)
+    ResponseEntity<StreamingResponseBody> streamVerifiedPartyIds(@RequestHeader(value = "Authorization") String bearer) throws IOException {
+        if (identityService.hasAnyRole(bearer, PLATFORM_MANAGER) == false) {
+            String message = "Only platform managers are allowed to retrieve all verified companies";
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).contentType(MediaType.TEXT_PLAIN)
+                    .body(outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        StreamingResponseBody body = JsonStreaming.<String>ndjson(objectMapper, consumer ->
+                partyRepository.streamIdentifiersByVerificationState(AdminService.CompanyState.VERIFIED, consumer));
+        return ResponseEntity.ok().contentType(JsonStreaming.APPLICATION_NDJSON).body(body);
+    }
+
     @SuppressWarnings("ConstantConditions")
     @ApiOperation(value = "", notes = "Get QualifyingParty for Id.", response = PartyType.class, tags = {})
     @RequestMapping(value = "/qualifying/{partyId}", method = RequestMethod.GET)
@@ -22,6 +22,9 @@ import eu.nimble.common.rest.identity.model.PersonPartyTuple;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Created by Johannes Innerbichler on 02/05/17.
@@ -88,28 +91,25 @@ public class PersonController {
     ResponseEntity<List<PersonType>> getPeople(
             @ApiParam(value = "Ids of people to retrieve.", required = true) @RequestBody PeopleList peopleList) {
 
-        List<PersonType> personTypeList = new ArrayList<>();
+        logger.debug("Requesting person information for {}", peopleList.getIds());
+        if (peopleList.getIds() == null || peopleList.getIds().isEmpty())
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.OK);
 
+        // search for persons and keep requested order
+        Map<Long, PersonType> foundPersons = personRepository.findByHjidIn(peopleList.getIds()).stream()
+                .collect(Collectors.toMap(PersonType::getHjid, Function.identity()));
+        List<PersonType> personTypeList = new ArrayList<>();
         for (Long personId : peopleList.getIds()) {
-            logger.debug("Requesting person information for {}", personId);
-
-            // search for persons
-            List<PersonType> foundPersons = personRepository.findByHjid(personId);
-
-            // check if person was found
-            if (foundPersons.isEmpty()) {
+            PersonType person = foundPersons.get(personId);
+            if (person == null)
                 logger.info("Requested person with Id {} not found", personId);
-            }else {
-                PersonType person = foundPersons.get(0);
-
-                // fetch and set roles
-                List<String> roles = new ArrayList<>(identityService.fetchRoles(person));
-                person.setRole(roles);
-
-                logger.debug("Returning requested person with Id {}", person.getHjid());
+            else
                 personTypeList.add(person);
-            }
         }
+
+        // fetch and set roles
+        identityService.enrichPersonsWithRoles(personTypeList);
+
         return new ResponseEntity<>(personTypeList, HttpStatus.OK);
     }
 
@@ -2,14 +2,11 @@ package eu.nimble.core.infrastructure.identity.uaa;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.exceptions.SignatureVerificationException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
 import eu.nimble.core.infrastructure.identity.constants.GlobalConstants;
 import eu.nimble.core.infrastructure.identity.entity.UaaUser;
-import eu.nimble.core.infrastructure.identity.system.dto.oauth.RealmConfigs;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.WordUtils;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
@@ -17,6 +14,7 @@ import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RolesResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
 import org.keycloak.representations.idm.*;
@@ -24,28 +22,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
-import org.springframework.http.*;
 import org.springframework.security.jwt.JwtHelper;
-import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
-import java.io.IOException;
 import java.net.URI;
 import java.rmi.ServerException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -65,6 +56,8 @@ public class KeycloakAdmin {
 
     public static final String PLATFORM_MANAGER_GROUP = "Platform Manager";
 
+    private static final int ROLE_MEMBERS_PAGE_SIZE = 500;
+
     public static final List<String> NON_ASSIGNABLE_ROLES = Arrays.asList("platform_manager", "uma_authorization",
             "offline_access", "admin", "create-realm",
             "create-realm", "nimble_user", "initial_representative");
@@ -74,6 +67,14 @@ public class KeycloakAdmin {
     @Value("${nimble.oauth.identityProvider.eFactory}")
     private String eFactoryIdentityProvider;
 
+    // minimal number of uncached users for resolving roles via role memberships
+    @Value("${nimble.keycloak.bulk-role-threshold:10}")
+    private int bulkRoleThreshold;
+
+    // minimal number of users for resolving attributes by listing all users of the realm
+    @Value("${nimble.keycloak.bulk-attribute-threshold:500}")
+    private int bulkAttributeThreshold;
+
     @Autowired
     private KeycloakConfig keycloakConfig;
 
@@ -83,6 +84,15 @@ public class KeycloakAdmin {
     @Autowired
     private OAuthClientConfig oAuthClientConfig;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private RealmKeyCache realmKeyCache;
+
+    @Autowired
+    private UserRoleCache userRoleCache;
+
     private Keycloak keycloak;
 
     private static long oneHourInMilliSeconds = 3600000;
@@ -145,31 +155,28 @@ public class KeycloakAdmin {
     }
 
     /**
-     * Verify the jwt token provided by the Keycloak
-     * TODO: Implement verification by using the certs
-     * https://stackoverflow.com/questions/39890232/how-to-decode-keys-from-keycloak-openid-connect-cert-api
+     * Verify the jwt token provided by the Keycloak. The signature is verified locally using the cached realm keys.
      * @param jwtToken
      * @return
      */
     public boolean verify(String jwtToken) throws ServerException {
 
-        String uri = keycloakConfig.getServerUrl() + "/realms/master";
+        String kid;
+        try {
+            kid = JWT.decode(jwtToken).getKeyId();
+        } catch (JWTDecodeException e) {
+            logger.error("Error in decoding token{}", e);
+            return false;
+        }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> entity = new HttpEntity<String>(headers);
-        RestTemplate rs = new RestTemplate();
+        SignatureVerifier verifier = realmKeyCache.getVerifier(kid);
+        if (verifier == null) {
+            logger.error("Token signed with unknown key {}", kid);
+            return false;
+        }
 
         try {
-            ResponseEntity<String> response = rs.exchange(uri, HttpMethod.GET, entity, String.class);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-            RealmConfigs realmConfigs = mapper.readValue(response.getBody(), RealmConfigs.class);
-            JwtHelper.decodeAndVerify(jwtToken, new RsaVerifier(getRSAPublicKey(realmConfigs.getPublic_key())));
-        } catch (IOException e) {
-            logger.error("Error in extracting the data from Keycloak realm response{}", e);
-            throw new ServerException("Keycloak server error", e);
+            JwtHelper.decodeAndVerify(jwtToken, verifier);
         } catch (Exception e) {
             logger.error("Error in verifying token{}", e);
             return false;
@@ -177,25 +184,6 @@ public class KeycloakAdmin {
         return true;
     }
 
-
-    /**
-     * Generates the RSA Public key from Keycloak public key
-     * @param publicKey
-     * @return
-     * @throws Exception
-     */
-    private RSAPublicKey getRSAPublicKey(String publicKey) throws Exception {
-        if( StringUtils.isBlank(publicKey)) return null;
-        try {
-            KeyFactory keyFactory = java.security.KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(java.util.Base64.getDecoder().decode(publicKey));
-            return (RSAPublicKey) keyFactory.generatePublic(keySpec);
-        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
-            logger.error("Error forming RSA key {}", e);
-            throw new Exception(e);
-        }
-    }
-
     /**
      * throws javax.ws.rs.WebApplicationException with corrensponding response for error
      **/
@@ -243,6 +231,8 @@ public class KeycloakAdmin {
 
         // delete user
         userResource.delete(externalId);
+        userRoleCache.invalidate(externalId);
+        eventPublisher.publishEvent(new UserRolesChangedEvent(externalId));
     }
 
     public void deleteUserByUsername(String username) {
@@ -268,10 +258,127 @@ public class KeycloakAdmin {
     public Set<String> getUserRoles(String userId, List<String> excludeRoles) {
 
         List<String> finalExcludeRoles = (excludeRoles == null) ? new ArrayList<>() : excludeRoles;
+        return userRoleCache.get(userId, this::fetchUserRoles).stream()
+                .filter(role -> finalExcludeRoles.contains(role) == false)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Resolves the realm roles of multiple users. If many users are not cached, their roles are resolved by querying
+     * the members of each (not excluded) realm role once instead of querying the roles of each user. Errors are
+     * isolated per user, users whose roles could not be resolved are omitted.
+     *
+     * @return roles by user id
+     */
+    public Map<String, Set<String>> getUserRoles(Collection<String> userIds, List<String> excludeRoles) {
+
+        List<String> finalExcludeRoles = (excludeRoles == null) ? new ArrayList<>() : excludeRoles;
+        Map<String, Set<String>> userRoles = new HashMap<>();
+        Set<String> uncachedUserIds = new HashSet<>();
+        for (String userId : userIds) {
+            Set<String> roles = userRoleCache.getIfPresent(userId);
+            if (roles != null) {
+                userRoles.put(userId, roles.stream()
+                        .filter(role -> finalExcludeRoles.contains(role) == false)
+                        .collect(Collectors.toSet()));
+            } else {
+                uncachedUserIds.add(userId);
+            }
+        }
+
+        if (uncachedUserIds.size() >= bulkRoleThreshold) {
+            try {
+                userRoles.putAll(fetchRoleMembers(uncachedUserIds, finalExcludeRoles));
+                return userRoles;
+            } catch (Exception ex) {
+                logger.warn("Error while resolving roles via role memberships, falling back to single users", ex);
+            }
+        }
+        for (String userId : uncachedUserIds) {
+            try {
+                userRoles.put(userId, getUserRoles(userId, finalExcludeRoles));
+            } catch (Exception ex) {
+                logger.warn("Error while fetching roles of user {}", userId, ex);
+            }
+        }
+        return userRoles;
+    }
+
+    private Map<String, Set<String>> fetchRoleMembers(Set<String> userIds, List<String> excludeRoles) {
+
+        Map<String, Set<String>> userRoles = new HashMap<>();
+        userIds.forEach(userId -> userRoles.put(userId, new HashSet<>()));
+
+        RolesResource rolesResource = this.keycloak.realm(keycloakConfig.getRealm()).roles();
+        List<String> roleNames = rolesResource.list().stream()
+                .map(r -> r.getName())
+                .filter(role -> excludeRoles.contains(role) == false)
+                .collect(Collectors.toList());
+        logger.debug("Resolving roles of {} users via members of {} roles", userIds.size(), roleNames.size());
+
+        // invert role memberships
+        for (String roleName : roleNames) {
+            int first = 0;
+            Set<UserRepresentation> members;
+            do {
+                members = rolesResource.get(roleName).getRoleUserMembers(first, ROLE_MEMBERS_PAGE_SIZE);
+                for (UserRepresentation member : members) {
+                    Set<String> roles = userRoles.get(member.getId());
+                    if (roles != null)
+                        roles.add(roleName);
+                }
+                first += ROLE_MEMBERS_PAGE_SIZE;
+            } while (members.size() == ROLE_MEMBERS_PAGE_SIZE);
+        }
+        return userRoles;
+    }
+
+    /**
+     * Resolves an attribute of multiple users. If a large share of the realm is requested, the users of the realm are
+     * listed page by page instead of fetching each user. Since the listing covers the whole realm, its threshold is
+     * independent of and considerably higher than the one of role lookups.
+     *
+     * @return first value of the attribute by user id, users without the attribute are omitted
+     */
+    public Map<String, String> getUserAttribute(Collection<String> userIds, String attribute) {
+
+        Map<String, String> values = new HashMap<>();
+        if (userIds.size() < bulkAttributeThreshold) {
+            for (String userId : userIds) {
+                try {
+                    putAttribute(values, fetchUserResource(userId).toRepresentation(), attribute);
+                } catch (Exception ex) {
+                    logger.warn("Error while fetching user {}", userId, ex);
+                }
+            }
+            return values;
+        }
+
+        Set<String> remainingUserIds = new HashSet<>(userIds);
+        UsersResource usersResource = this.keycloak.realm(keycloakConfig.getRealm()).users();
+        int first = 0;
+        List<UserRepresentation> users;
+        do {
+            users = usersResource.list(first, ROLE_MEMBERS_PAGE_SIZE);
+            for (UserRepresentation user : users) {
+                if (remainingUserIds.remove(user.getId()))
+                    putAttribute(values, user, attribute);
+            }
+            first += ROLE_MEMBERS_PAGE_SIZE;
+        } while (users.size() == ROLE_MEMBERS_PAGE_SIZE && remainingUserIds.isEmpty() == false);
+        return values;
+    }
+
+    private static void putAttribute(Map<String, String> values, UserRepresentation user, String attribute) {
+        Map<String, List<String>> attributes = user.getAttributes();
+        if (attributes != null && attributes.containsKey(attribute) && attributes.get(attribute).isEmpty() == false)
+            values.put(user.getId(), attributes.get(attribute).get(0));
+    }
+
+    private Set<String> fetchUserRoles(String userId) {
         UserResource userResource = fetchUserResource(userId);
         return userResource.roles().realmLevel().listAll().stream()
                 .map(r -> r.getName())
-                .filter(role -> finalExcludeRoles.contains(role) == false)
                 .collect(Collectors.toSet());
     }
 
@@ -288,6 +395,18 @@ public class KeycloakAdmin {
         return null;
     }
     public void addRole(String userId, String role) {
+        addRealmRole(userId, role);
+        userRoleCache.invalidate(userId);
+        eventPublisher.publishEvent(new UserRolesChangedEvent(userId));
+    }
+
+    public void removeRole(String userId, String role) {
+        removeRealmRole(userId, role);
+        userRoleCache.invalidate(userId);
+        eventPublisher.publishEvent(new UserRolesChangedEvent(userId));
+    }
+
+    private void addRealmRole(String userId, String role) {
         UserResource userResource = fetchUserResource(userId);
 
         RealmResource realmResource = this.keycloak.realm(keycloakConfig.getRealm());
@@ -295,7 +414,7 @@ public class KeycloakAdmin {
         userResource.roles().realmLevel().add(Collections.singletonList(roleRepresentation));
     }
 
-    public void removeRole(String userId, String role) {
+    private void removeRealmRole(String userId, String role) {
         UserResource userResource = fetchUserResource(userId);
 
         RealmResource realmResource = this.keycloak.realm(keycloakConfig.getRealm());
@@ -357,15 +476,23 @@ public class KeycloakAdmin {
 
     public int applyRoles(String userID, Set<String> rolesToApply) {
         // setting proper set of roles
-        Set<String> currentRoles = getUserRoles(userID, NON_ASSIGNABLE_ROLES);
+        // bypass role cache in order to compute the changes on the current state
+        Set<String> currentRoles = fetchUserRoles(userID).stream()
+                .filter(role -> NON_ASSIGNABLE_ROLES.contains(role) == false)
+                .collect(Collectors.toSet());
         Set<String> rolesToRemove = Sets.difference(currentRoles, rolesToApply);
         Set<String> rolesToAdd = Sets.difference(rolesToApply, currentRoles);
         logger.info("Applying new roles to user {}: add: {}, remove: {}", userID, rolesToAdd, rolesToRemove);
         for (String role : rolesToRemove)
-            removeRole(userID, role);
+            removeRealmRole(userID, role);
         for (String role : rolesToAdd)
-            addRole(userID, role);
-        return rolesToAdd.size() + rolesToRemove.size();
+            addRealmRole(userID, role);
+        int numChanges = rolesToAdd.size() + rolesToRemove.size();
+        if (numChanges > 0) {
+            userRoleCache.invalidate(userID);
+            eventPublisher.publishEvent(new UserRolesChangedEvent(userID));
+        }
+        return numChanges;
     }
 
     public static List<String> prettfiyRoleIDs(List<String> roleIDs) {
@@ -13,6 +13,8 @@ public class KeycloakConfig {
 
     private final Admin admin = new Admin();
 
+    private final Jwks jwks = new Jwks();
+
     public String getServerUrl() {
         return serverUrl;
     }
@@ -33,6 +35,10 @@ public class KeycloakConfig {
         return admin;
     }
 
+    public Jwks getJwks() {
+        return jwks;
+    }
+
     public static class Admin {
         String username;
         String password;
@@ -71,4 +77,27 @@ public class KeycloakConfig {
             this.cliendSecret = cliendSecret;
         }
     }
+
+    public static class Jwks {
+        // interval in which cached realm keys are refreshed (ms)
+        long ttl = 3600000;
+        // minimal interval between refreshes triggered by unknown key ids (ms)
+        long minRefreshInterval = 10000;
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public long getMinRefreshInterval() {
+            return minRefreshInterval;
+        }
+
+        public void setMinRefreshInterval(long minRefreshInterval) {
+            this.minRefreshInterval = minRefreshInterval;
+        }
+    }
 }
@@ -1,7 +1,11 @@
 package eu.nimble.core.infrastructure.identity.uaa;
 
+import eu.nimble.core.infrastructure.identity.utils.PooledHttpRequestFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.security.oauth2.client.OAuth2ClientContext;
 import org.springframework.security.oauth2.client.token.AccessTokenRequest;
 import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordAccessTokenProvider;
@@ -11,8 +15,25 @@ import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Obtains and refreshes tokens of users at the token endpoint of Keycloak. The token provider and its pool of
+ * keep-alive connections are shared by all requests. Latencies of the token requests are exposed via the metrics
+ * endpoint.
+ */
 @Service
-public class OAuthClient {
+public class OAuthClient implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "oauth.";
 
     @Autowired
     private OAuthClientConfig config;
@@ -20,45 +41,105 @@ public class OAuthClient {
     @Autowired
     private OAuth2ClientContext oauth2Context;
 
+    private HttpComponentsClientHttpRequestFactory requestFactory;
+
+    private ResourceOwnerPasswordAccessTokenProvider accessTokenProvider;
+
+    private final RequestStats tokenStats = new RequestStats();
+
+    private final RequestStats refreshStats = new RequestStats();
+
     @Bean
     public TokenStore tokenStore() {
         return new InMemoryTokenStore();
     }
 
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.requestFactory = PooledHttpRequestFactory.create(config.getMaxConnections(), config.getMaxConnections(),
+                config.getConnectTimeout(), config.getReadTimeout());
+
+        this.accessTokenProvider = new ResourceOwnerPasswordAccessTokenProvider();
+        this.accessTokenProvider.setRequestFactory(requestFactory);
+    }
+
+    @PreDestroy
+    @SuppressWarnings("unused")
+    public void shutdown() throws Exception {
+        requestFactory.destroy();
+    }
+
     public OAuth2AccessToken getToken(String username, String password) {
 
         // build resources
-        ResourceOwnerPasswordResourceDetails resourceDetails = new ResourceOwnerPasswordResourceDetails();
-        resourceDetails.setClientId(config.getCliendId());
-        resourceDetails.setClientSecret(config.getCliendSecret());
-        resourceDetails.setAccessTokenUri(config.getAccessTokenUri());
+        ResourceOwnerPasswordResourceDetails resourceDetails = createResourceDetails();
         resourceDetails.setUsername(username);
         resourceDetails.setPassword(password);
 
-        // build provider
-        ResourceOwnerPasswordAccessTokenProvider accessTokenProvider = new ResourceOwnerPasswordAccessTokenProvider();
         AccessTokenRequest accessTokenRequest = oauth2Context.getAccessTokenRequest();
 
         // fetch token
-        OAuth2AccessToken accessToken = accessTokenProvider.obtainAccessToken(resourceDetails, accessTokenRequest);
-        return accessToken;
+        return tokenStats.measure(() -> accessTokenProvider.obtainAccessToken(resourceDetails, accessTokenRequest));
     }
 
     public OAuth2AccessToken refreshToken(String refreshToken) {
 
         // build resources
+        ResourceOwnerPasswordResourceDetails resourceDetails = createResourceDetails();
+
+        AccessTokenRequest accessTokenRequest = oauth2Context.getAccessTokenRequest();
+
+        // perform refresh
+        return refreshStats.measure(() -> accessTokenProvider.refreshAccessToken(resourceDetails, () -> refreshToken, accessTokenRequest));
+    }
+
+    private ResourceOwnerPasswordResourceDetails createResourceDetails() {
         ResourceOwnerPasswordResourceDetails resourceDetails = new ResourceOwnerPasswordResourceDetails();
         resourceDetails.setClientId(config.getCliendId());
         resourceDetails.setClientSecret(config.getCliendSecret());
         resourceDetails.setAccessTokenUri(config.getAccessTokenUri());
+        return resourceDetails;
+    }
 
-        // build provider
-        AccessTokenRequest accessTokenRequest = oauth2Context.getAccessTokenRequest();
-        ResourceOwnerPasswordAccessTokenProvider accessTokenProvider = new ResourceOwnerPasswordAccessTokenProvider();
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        tokenStats.addMetrics(METRIC_PREFIX + "token.", metrics);
+        refreshStats.addMetrics(METRIC_PREFIX + "refresh.", metrics);
+        return metrics;
+    }
 
-        // perform refresh
-        OAuth2AccessToken newAccessToken = accessTokenProvider.refreshAccessToken(resourceDetails, () -> refreshToken, accessTokenRequest);
-        return newAccessToken;
+    private static class RequestStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        <T> T measure(Supplier<T> request) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                T result = request.get();
+                success = true;
+                return result;
+            } finally {
+                long duration = System.nanoTime() - start;
+                count.increment();
+                totalNanos.add(duration);
+                maxNanos.accumulateAndGet(duration, Math::max);
+                if (!success)
+                    failures.increment();
+            }
+        }
+
+        void addMetrics(String prefix, List<Metric<?>> metrics) {
+            long requests = count.sum();
+            metrics.add(new Metric<>(prefix + "count", requests));
+            metrics.add(new Metric<>(prefix + "failures", failures.sum()));
+            metrics.add(new Metric<>(prefix + "time.mean", requests > 0 ? totalNanos.sum() / 1000000.0 / requests : 0.0));
+            metrics.add(new Metric<>(prefix + "time.max", TimeUnit.NANOSECONDS.toMillis(maxNanos.get())));
+        }
     }
 
     public enum Role {
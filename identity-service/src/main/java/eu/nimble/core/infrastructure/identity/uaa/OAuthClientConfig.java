@@ -11,6 +11,11 @@ public class OAuthClientConfig {
     private String cliendSecret;
     private String accessTokenUri;
 
+    // connections to the token endpoint
+    private int maxConnections = 50;
+    private int connectTimeout = 5000;
+    private int readTimeout = 10000;
+
     public String getCliendId() {
         return cliendId;
     }
@@ -34,4 +39,28 @@ public class OAuthClientConfig {
     public void setAccessTokenUri(String accessTokenUri) {
         this.accessTokenUri = accessTokenUri;
     }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
 }
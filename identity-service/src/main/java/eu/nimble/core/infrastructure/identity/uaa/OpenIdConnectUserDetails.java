@@ -8,34 +8,44 @@ import org.springframework.security.jwt.Jwt;
 import org.springframework.security.jwt.JwtHelper;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Immutable principal parsed from an OpenID Connect token. Instances are shared between requests via
+ * {@link TokenDetailsCache}.
+ */
 public class OpenIdConnectUserDetails implements UserDetails {
 
     private static final long serialVersionUID = 1L;
 
-    private String userId;
-    private String username;
-    private List<String> realmRoles;
-    private List<String> resourcesRoles;
-    private List<GrantedAuthority> grantedAuthorities;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String userId;
+    private final String username;
+    private final List<String> realmRoles;
+    private final List<String> resourcesRoles;
+    private final Set<String> roles;
+    private final List<GrantedAuthority> grantedAuthorities;
+    private final Long expiresAt; // epoch seconds, null if not specified by token
 
     @SuppressWarnings("unchecked")
     public OpenIdConnectUserDetails(String oidToken) throws IOException {
 
         Jwt tokenDecoded = JwtHelper.decode(oidToken);
-        Map<String, Object> authInfo = new ObjectMapper().readValue(tokenDecoded.getClaims(), Map.class);
+        Map<String, Object> authInfo = objectMapper.readValue(tokenDecoded.getClaims(), Map.class);
 
         this.userId = (String) authInfo.get("sub");
         this.username = (String) authInfo.get("email");
-
-
-        realmRoles = (List<String>) ((Map<String, List>) authInfo.get("realm_access")).get("roles");
-        resourcesRoles = (List<String>) ((Map<String, Map<String, List>>) authInfo.get("resource_access")).get("account").get("roles");
-        grantedAuthorities = realmRoles.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList());
+        Object exp = authInfo.get("exp");
+        this.expiresAt = exp instanceof Number ? ((Number) exp).longValue() : null;
+
+        List<String> realmRoles = (List<String>) ((Map<String, List>) authInfo.get("realm_access")).get("roles");
+        List<String> resourcesRoles = (List<String>) ((Map<String, Map<String, List>>) authInfo.get("resource_access")).get("account").get("roles");
+        this.realmRoles = Collections.unmodifiableList(new ArrayList<>(realmRoles));
+        this.resourcesRoles = Collections.unmodifiableList(new ArrayList<>(resourcesRoles));
+        this.roles = Collections.unmodifiableSet(new HashSet<>(realmRoles));
+        this.grantedAuthorities = Collections.unmodifiableList(realmRoles.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList()));
     }
 
     public static OpenIdConnectUserDetails fromBearer(String bearer) throws IOException {
@@ -53,7 +63,19 @@ public class OpenIdConnectUserDetails implements UserDetails {
     }
 
     public Boolean hasRole(String role) {
-        return grantedAuthorities.stream().map(GrantedAuthority::getAuthority).anyMatch(r -> r.equals(role));
+        return roles.contains(role);
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired() {
+        return expiresAt != null && System.currentTimeMillis() >= expiresAt * 1000;
     }
 
     public String getUserId() {
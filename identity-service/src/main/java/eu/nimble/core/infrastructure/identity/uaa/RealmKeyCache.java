@@ -0,0 +1,116 @@
+package eu.nimble.core.infrastructure.identity.uaa;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigInteger;
+import java.rmi.ServerException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the signing keys of the Keycloak realm (JWKS), so that tokens can be verified locally. Keys are refreshed in
+ * the background and on demand if a token refers to an unknown key id. Previously fetched keys are kept if Keycloak
+ * is not reachable.
+ */
+@Component
+public class RealmKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RealmKeyCache.class);
+
+    private static final String REALM = "master";
+
+    @Autowired
+    private KeycloakConfig keycloakConfig;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // verifiers by key id, replaced as a whole on refresh
+    private volatile Map<String, SignatureVerifier> verifiers = new HashMap<>();
+
+    // verifier for the realm public key, used for tokens without key id
+    private volatile SignatureVerifier realmVerifier;
+
+    private volatile long lastRefresh = 0;
+
+    private volatile long lastRefreshAttempt = 0;
+
+    /**
+     * Returns the verifier for the given key id or null if the key is unknown to the realm.
+     *
+     * @param kid key id of the token header (may be null)
+     * @throws ServerException if no keys could be fetched from Keycloak so far
+     */
+    public SignatureVerifier getVerifier(String kid) throws ServerException {
+        SignatureVerifier verifier = lookup(kid);
+        if (verifier == null && refreshAllowed()) {
+            refresh();
+            verifier = lookup(kid);
+        }
+        if (verifier == null && lastRefresh == 0)
+            throw new ServerException("Keycloak server error: realm keys not available");
+        return verifier;
+    }
+
+    @Scheduled(initialDelayString = "${nimble.keycloak.jwks.ttl:3600000}", fixedDelayString = "${nimble.keycloak.jwks.ttl:3600000}")
+    public synchronized void refresh() {
+        String realmUri = keycloakConfig.getServerUrl() + "/realms/" + REALM;
+        lastRefreshAttempt = System.currentTimeMillis();
+        try {
+            Map<String, SignatureVerifier> newVerifiers = new HashMap<>();
+            JsonNode certs = objectMapper.readTree(restTemplate.getForObject(realmUri + "/protocol/openid-connect/certs", String.class));
+            for (JsonNode key : certs.path("keys")) {
+                if ("RSA".equals(key.path("kty").asText()) == false || "enc".equals(key.path("use").asText()))
+                    continue;
+                newVerifiers.put(key.path("kid").asText(), new RsaVerifier(toPublicKey(key.path("n").asText(), key.path("e").asText())));
+            }
+
+            JsonNode realmConfigs = objectMapper.readTree(restTemplate.getForObject(realmUri, String.class));
+            String publicKey = realmConfigs.path("public_key").asText();
+            if (StringUtils.isNotBlank(publicKey))
+                realmVerifier = new RsaVerifier(toPublicKey(publicKey));
+
+            verifiers = newVerifiers;
+            lastRefresh = System.currentTimeMillis();
+            logger.debug("Refreshed {} keys of realm {}", newVerifiers.size(), REALM);
+        } catch (Exception e) {
+            logger.warn("Error while refreshing keys of realm {}, keeping {} cached keys", REALM, verifiers.size(), e);
+        }
+    }
+
+    private SignatureVerifier lookup(String kid) {
+        return kid == null ? realmVerifier : verifiers.get(kid);
+    }
+
+    private boolean refreshAllowed() {
+        return System.currentTimeMillis() - lastRefreshAttempt > keycloakConfig.getJwks().getMinRefreshInterval();
+    }
+
+    private static RSAPublicKey toPublicKey(String modulus, String exponent) throws GeneralSecurityException {
+        BigInteger n = new BigInteger(1, Base64.getUrlDecoder().decode(modulus));
+        BigInteger e = new BigInteger(1, Base64.getUrlDecoder().decode(exponent));
+        return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(n, e));
+    }
+
+    private static RSAPublicKey toPublicKey(String x509PublicKey) throws GeneralSecurityException {
+        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(Base64.getDecoder().decode(x509PublicKey));
+        return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(keySpec);
+    }
+}
@@ -0,0 +1,57 @@
+package eu.nimble.core.infrastructure.identity.uaa;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of parsed tokens, keyed by the hash of the token. Entries are dropped once the token has expired, so
+ * that each token is only parsed once during its lifetime.
+ */
+@Component
+public class TokenDetailsCache {
+
+    @Value("${nimble.oauth.token-cache.max-size:10000}")
+    private long maxSize;
+
+    // upper bound for keeping an entry, independent of the expiry of the token (ms)
+    @Value("${nimble.oauth.token-cache.max-lifetime:3600000}")
+    private long maxLifetime;
+
+    private Cache<String, OpenIdConnectUserDetails> cache;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxLifetime, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public OpenIdConnectUserDetails fromBearer(String bearer) throws IOException {
+        return get(bearer.replace("Bearer ", ""));
+    }
+
+    public OpenIdConnectUserDetails get(String token) throws IOException {
+        String key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+
+        OpenIdConnectUserDetails details = cache.getIfPresent(key);
+        if (details != null && details.isExpired() == false)
+            return details;
+
+        details = new OpenIdConnectUserDetails(token);
+        if (details.isExpired())
+            cache.invalidate(key);
+        else
+            cache.put(key, details);
+        return details;
+    }
+}
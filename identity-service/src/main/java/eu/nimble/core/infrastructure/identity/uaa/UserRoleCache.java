@@ -0,0 +1,76 @@
+package eu.nimble.core.infrastructure.identity.uaa;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Size and time bounded cache of the realm roles of users. Entries are invalidated by {@link KeycloakAdmin} whenever
+ * roles are changed through this service. Hit and miss counts are exposed via the metrics endpoint.
+ */
+@Component
+public class UserRoleCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.user-roles.";
+
+    @Value("${nimble.keycloak.role-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${nimble.keycloak.role-cache.ttl:300000}")
+    private long ttl;
+
+    private Cache<String, Set<String>> cache;
+
+    @PostConstruct
+    @SuppressWarnings("unused")
+    public void init() {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached roles of the user or loads them with the given loader.
+     */
+    public Set<String> get(String userId, Function<String, Set<String>> loader) {
+        Set<String> roles = cache.getIfPresent(userId);
+        if (roles == null) {
+            roles = Collections.unmodifiableSet(new HashSet<>(loader.apply(userId)));
+            cache.put(userId, roles);
+        }
+        return roles;
+    }
+
+    /**
+     * Returns the cached roles of the user or null if not cached.
+     */
+    public Set<String> getIfPresent(String userId) {
+        return cache.getIfPresent(userId);
+    }
+
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = cache.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+}
@@ -0,0 +1,17 @@
+package eu.nimble.core.infrastructure.identity.uaa;
+
+/**
+ * Published by {@link KeycloakAdmin} after the realm roles of a user have been changed.
+ */
+public class UserRolesChangedEvent {
+
+    private final String userId;
+
+    public UserRolesChangedEvent(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,51 @@
+package eu.nimble.core.infrastructure.identity.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Utilities for streaming large listings as newline delimited JSON (one element per line), so that results do not
+ * have to be collected in memory before being serialized.
+ */
+public class JsonStreaming {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    /**
+     * Creates a response body, which writes each element passed to the consumer by the producer as a separate line.
+     *
+     * @param objectMapper mapper used for serializing elements
+     * @param producer     passes elements to the given consumer (e.g. while scrolling through query results)
+     */
+    public static <T> StreamingResponseBody ndjson(ObjectMapper objectMapper, Consumer<Consumer<T>> producer) {
+        ObjectWriter writer = objectMapper.writer();
+        return outputStream -> {
+            int[] count = {0};
+            try {
+                producer.accept(element -> {
+                    try {
+                        outputStream.write(writer.writeValueAsBytes(element));
+                        outputStream.write('\n');
+                        if (++count[0] % FLUSH_INTERVAL == 0)
+                            outputStream.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        };
+    }
+}
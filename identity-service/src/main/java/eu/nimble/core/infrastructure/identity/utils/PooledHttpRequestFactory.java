@@ -0,0 +1,36 @@
+package eu.nimble.core.infrastructure.identity.utils;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Creates request factories for HTTP clients shared by all requests of a service. Connections are pooled and kept
+ * alive, cookies are not managed, so that cookies of one response are never sent with requests of other users.
+ * Factories have to be destroyed in order to release the pooled connections.
+ */
+public class PooledHttpRequestFactory {
+
+    /**
+     * @param maxTotal       maximum number of pooled connections
+     * @param maxPerRoute    maximum number of pooled connections per host
+     * @param connectTimeout timeout in milliseconds for connecting and for obtaining a pooled connection
+     * @param readTimeout    socket timeout in milliseconds
+     */
+    public static HttpComponentsClientHttpRequestFactory create(int maxTotal, int maxPerRoute, int connectTimeout, int readTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .build());
+    }
+}
@@ -703,8 +703,16 @@ public class UblAdapter {
         if (party == null || party.getMetadata() == null)
             return null;
 
+        return adaptPartyCreationDate(party.getMetadata().getCreationDateItem());
+    }
+
+    public static String adaptPartyCreationDate(Date creationDate) {
+
+        if (creationDate == null)
+            return null;
+
         DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 
-        return dateFormat.format(party.getMetadata().getCreationDateItem());
+        return dateFormat.format(creationDate);
     }
 }
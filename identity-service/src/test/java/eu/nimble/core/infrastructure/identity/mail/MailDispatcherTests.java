@@ -0,0 +1,121 @@
+package eu.nimble.core.infrastructure.identity.mail;
+
+import eu.nimble.core.infrastructure.identity.entity.MailOutboxEntry;
+import eu.nimble.core.infrastructure.identity.repository.MailOutboxRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class MailDispatcherTests {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private MailOutboxRepository outboxRepository;
+
+    private RecordingMailSender emailSender;
+
+    private MailDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        outboxRepository = mock(MailOutboxRepository.class);
+        emailSender = new RecordingMailSender();
+        dispatcher = new MailDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "outboxRepository", outboxRepository);
+        ReflectionTestUtils.setField(dispatcher, "emailSender", emailSender);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 100);
+        ReflectionTestUtils.setField(dispatcher, "poolSize", 2);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(dispatcher, "retryDelay", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "lease", 60000L);
+        dispatcher.init();
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testMailClaimedByOtherReplicaIsNotSent() {
+        // GIVEN: two pending mails, the second one claimed concurrently by another replica
+        MailOutboxEntry claimed = createEntry(1L, "claimed", 0);
+        MailOutboxEntry lost = createEntry(2L, "lost", 0);
+        mockPending(claimed, lost);
+        when(outboxRepository.claim(eq(1L), any(Date.class), any(Date.class))).thenReturn(1);
+        when(outboxRepository.claim(eq(2L), any(Date.class), any(Date.class))).thenReturn(0);
+
+        // WHEN: processing the outbox
+        dispatcher.processOutbox();
+
+        // THEN: only the claimed mail is sent and removed
+        assertEquals(1, emailSender.sent.size());
+        assertEquals("claimed", emailSender.sent.get(0).getSubject());
+        verify(outboxRepository).delete(1L);
+        verify(outboxRepository, never()).delete(2L);
+        verify(outboxRepository, never()).postpone(eq(2L), any(Date.class), anyString());
+        verify(outboxRepository, never()).updateStatus(eq(2L), any(MailOutboxEntry.Status.class), anyString());
+    }
+
+    @Test
+    public void testFailedMailIsDeadAfterMaxAttempts() {
+        // GIVEN: a mail at its last attempt and a new mail, the mail server being unavailable
+        MailOutboxEntry lastAttempt = createEntry(1L, "last attempt", MAX_ATTEMPTS - 1);
+        MailOutboxEntry firstAttempt = createEntry(2L, "first attempt", 0);
+        mockPending(lastAttempt, firstAttempt);
+        when(outboxRepository.claim(anyLong(), any(Date.class), any(Date.class))).thenReturn(1);
+        emailSender.failure = new MailSendException("Connection refused");
+
+        // WHEN: processing the outbox
+        dispatcher.processOutbox();
+
+        // THEN: the mail at its last attempt is kept as dead letter, the other one is retried
+        verify(outboxRepository).updateStatus(eq(1L), eq(MailOutboxEntry.Status.DEAD), contains("Connection refused"));
+        verify(outboxRepository, never()).postpone(eq(1L), any(Date.class), anyString());
+        verify(outboxRepository).postpone(eq(2L), any(Date.class), contains("Connection refused"));
+        verify(outboxRepository, never()).updateStatus(eq(2L), any(MailOutboxEntry.Status.class), anyString());
+        verify(outboxRepository, never()).delete(anyLong());
+    }
+
+    private void mockPending(MailOutboxEntry... entries) {
+        when(outboxRepository.findByStatusAndNextAttemptLessThanEqualOrderByIdAsc(eq(MailOutboxEntry.Status.PENDING), any(Date.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(entries));
+    }
+
+    private static MailOutboxEntry createEntry(Long id, String subject, int attempts) {
+        MailOutboxEntry entry = new MailOutboxEntry("noreply@nimble-project.org", new String[]{"user@nimble-project.org"}, subject, "text");
+        ReflectionTestUtils.setField(entry, "id", id);
+        ReflectionTestUtils.setField(entry, "attempts", attempts);
+        return entry;
+    }
+
+    /**
+     * Records the sent messages or fails all of them, messages are sent by the workers of the dispatcher.
+     */
+    private static class RecordingMailSender extends JavaMailSenderImpl {
+        private final List<SimpleMailMessage> sent = new ArrayList<>();
+        private volatile MailException failure;
+
+        @Override
+        public synchronized void send(SimpleMailMessage... simpleMessages) throws MailException {
+            if (failure != null)
+                throw failure;
+            sent.addAll(Arrays.asList(simpleMessages));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package eu.nimble.core.infrastructure.identity.mail;
+
+import eu.nimble.core.infrastructure.identity.mail.model.SubscriptionMailModel;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MailTemplateRegistryTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailTemplateRegistryTests.class);
+
+    private static final int WARMUP_RUNS = 200;
+
+    private static final int MEASURED_RUNS = 2000;
+
+    private TemplateEngine templateEngine;
+
+    private MailTemplateRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        templateEngine = new ThymeleafConfig().textTemplateEngine();
+        registry = new MailTemplateRegistry();
+        ReflectionTestUtils.setField(registry, "textMailTemplateEngine", templateEngine);
+        ReflectionTestUtils.setField(registry, "mailTemplateLanguages", "en,es");
+        registry.init();
+    }
+
+    @Test
+    public void testTemplatesAreResolvedPerLanguage() {
+        assertEquals("invitation_es", registry.getTemplateName("invitation", "es"));
+        assertEquals("invitation_en", registry.getTemplateName("invitation", "de"));
+
+        // no spanish variant available
+        assertEquals("subscription_en", registry.getTemplateName("subscription", "es"));
+    }
+
+    // benchmark without assertions, only run on demand:
+    // mvn test -Dtest=MailTemplateRegistryTests#benchmarkSubscriptionSummaryRendering -Dbenchmark=true
+    @Test
+    public void benchmarkSubscriptionSummaryRendering() {
+        Assume.assumeTrue("Benchmarks are enabled with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+        Context context = createSubscriptionContext();
+
+        // template engine parsing the template on every call (previous configuration)
+        TemplateEngine uncachedEngine = new TemplateEngine();
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("/templates/mail/");
+        templateResolver.setSuffix(".txt");
+        templateResolver.setTemplateMode(TemplateMode.TEXT);
+        templateResolver.setCharacterEncoding("UTF8");
+        templateResolver.setCacheable(false);
+        uncachedEngine.addTemplateResolver(templateResolver);
+
+        String templateName = registry.getTemplateName("subscription", "en");
+        String expected = uncachedEngine.process(templateName, context);
+        assertEquals(expected, templateEngine.process(templateName, context));
+        assertTrue(expected.contains("https://example.com/product/19/9"));
+
+        double uncachedMicros = measure(uncachedEngine, templateName, context);
+        double cachedMicros = measure(templateEngine, templateName, context);
+        logger.info("Rendering subscription summary: {} µs per message uncached, {} µs per message precompiled",
+                String.format("%.1f", uncachedMicros), String.format("%.1f", cachedMicros));
+    }
+
+    private static double measure(TemplateEngine engine, String templateName, Context context) {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            engine.process(templateName, context);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++)
+            engine.process(templateName, context);
+        return (System.nanoTime() - start) / 1000.0 / MEASURED_RUNS;
+    }
+
+    private static Context createSubscriptionContext() {
+        List<SubscriptionMailModel> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            List<String> productUrls = new ArrayList<>();
+            for (int j = 0; j < 10; j++)
+                productUrls.add(String.format("https://example.com/product/%d/%d", i, j));
+            SubscriptionMailModel subscription = new SubscriptionMailModel();
+            subscription.setTitle("The following products are published/updated by Company " + i);
+            subscription.setProductUrls(productUrls);
+            subscriptions.add(subscription);
+        }
+
+        Context context = new Context();
+        context.setVariable("subscriptions", subscriptions);
+        context.setVariable("platformName", "NIMBLE");
+        return context;
+    }
+}
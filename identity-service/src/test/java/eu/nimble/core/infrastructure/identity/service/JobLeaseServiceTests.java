@@ -0,0 +1,80 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.IdentityServiceApplication;
+import eu.nimble.core.infrastructure.identity.config.DefaultTestConfiguration;
+import eu.nimble.core.infrastructure.identity.config.KafkaConfig;
+import eu.nimble.core.infrastructure.identity.entity.JobLease;
+import eu.nimble.core.infrastructure.identity.repository.JobLeaseRepository;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.test.rule.KafkaEmbedded;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = IdentityServiceApplication.class)
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+@Import(DefaultTestConfiguration.class)
+public class JobLeaseServiceTests {
+
+    private static final String OTHER_REPLICA = "other-replica";
+
+    private static final long LEASE_DURATION = 60000;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    @ClassRule
+    public static KafkaEmbedded embeddedKafka = new KafkaEmbedded(1, true, "topic");
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() {
+        // GIVEN: lease of a failed replica which expired
+        jobLeaseRepository.save(new JobLease("test:expired", OTHER_REPLICA, new Date(System.currentTimeMillis() - 1000)));
+
+        // WHEN/THEN: lease is taken over by this replica
+        assertTrue(jobLeaseService.tryAcquire("test:expired", LEASE_DURATION));
+        JobLease lease = jobLeaseRepository.findOne("test:expired");
+        assertEquals(KafkaConfig.INSTANCE_ID, lease.getOwner());
+        assertTrue(lease.getLeaseUntil().after(new Date()));
+    }
+
+    @Test
+    public void testCompletedLeaseIsNotTakenOver() {
+        // GIVEN: expired lease of a run completed by another replica
+        jobLeaseRepository.save(new JobLease("test:completed", OTHER_REPLICA, new Date(System.currentTimeMillis() - 1000)));
+        jobLeaseRepository.complete("test:completed", OTHER_REPLICA);
+
+        // WHEN/THEN: run is not executed again
+        assertFalse(jobLeaseService.tryAcquire("test:completed", LEASE_DURATION));
+        JobLease lease = jobLeaseRepository.findOne("test:completed");
+        assertEquals(OTHER_REPLICA, lease.getOwner());
+        assertTrue(lease.isCompleted());
+    }
+
+    @Test
+    public void testActiveLeaseIsNotAcquired() {
+        // GIVEN: lease held by another replica
+        jobLeaseRepository.save(new JobLease("test:active", OTHER_REPLICA, new Date(System.currentTimeMillis() + LEASE_DURATION)));
+
+        // WHEN/THEN: lease can neither be acquired nor renewed
+        assertFalse(jobLeaseService.tryAcquire("test:active", LEASE_DURATION));
+        assertFalse(jobLeaseService.renew("test:active", LEASE_DURATION));
+        assertEquals(OTHER_REPLICA, jobLeaseRepository.findOne("test:active").getOwner());
+    }
+}
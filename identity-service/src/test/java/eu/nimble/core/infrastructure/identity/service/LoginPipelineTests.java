@@ -0,0 +1,170 @@
+package eu.nimble.core.infrastructure.identity.service;
+
+import eu.nimble.core.infrastructure.identity.entity.UaaUser;
+import eu.nimble.core.infrastructure.identity.entity.dto.Credentials;
+import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponse;
+import eu.nimble.core.infrastructure.identity.system.dto.rocketchat.login.RocketChatLoginResponseData;
+import eu.nimble.core.infrastructure.identity.uaa.KeycloakAdmin;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class LoginPipelineTests {
+
+    private static final String USER_ID = "keycloak-user";
+
+    private static final long TIMEOUT = 200;
+
+    private KeycloakAdmin keycloakAdmin;
+
+    private RocketChatService chatService;
+
+    private LoginPipeline loginPipeline;
+
+    private Credentials credentials;
+
+    @Before
+    public void setUp() {
+        UaaUserRepository uaaUserRepository = mock(UaaUserRepository.class);
+        PersonType person = new PersonType();
+        person.setHjid(1L);
+        when(uaaUserRepository.findWithPersonByExternalID(USER_ID)).thenReturn(new UaaUser("user@nimble-project.org", person, USER_ID));
+        PartyRepository partyRepository = mock(PartyRepository.class);
+        when(partyRepository.findWithNamesByPerson(any(PersonType.class))).thenReturn(Collections.emptyList());
+        ChatSessionService chatSessionService = mock(ChatSessionService.class);
+        when(chatSessionService.isAsyncLogin()).thenReturn(false);
+        keycloakAdmin = mock(KeycloakAdmin.class);
+        chatService = mock(RocketChatService.class);
+
+        loginPipeline = new LoginPipeline();
+        ReflectionTestUtils.setField(loginPipeline, "uaaUserRepository", uaaUserRepository);
+        ReflectionTestUtils.setField(loginPipeline, "partyRepository", partyRepository);
+        ReflectionTestUtils.setField(loginPipeline, "keycloakAdmin", keycloakAdmin);
+        ReflectionTestUtils.setField(loginPipeline, "chatService", chatService);
+        ReflectionTestUtils.setField(loginPipeline, "chatSessionService", chatSessionService);
+        ReflectionTestUtils.setField(loginPipeline, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(loginPipeline, "poolSize", 2);
+        ReflectionTestUtils.setField(loginPipeline, "chatPoolSize", 2);
+        ReflectionTestUtils.setField(loginPipeline, "queueSize", 10);
+        ReflectionTestUtils.setField(loginPipeline, "chatQueueSize", 10);
+        ReflectionTestUtils.setField(loginPipeline, "userTimeout", TIMEOUT);
+        ReflectionTestUtils.setField(loginPipeline, "rolesTimeout", TIMEOUT);
+        ReflectionTestUtils.setField(loginPipeline, "chatTimeout", TIMEOUT);
+        loginPipeline.init();
+
+        credentials = new Credentials();
+        credentials.setUsername("user@nimble-project.org");
+    }
+
+    @After
+    public void tearDown() {
+        loginPipeline.shutdown();
+    }
+
+    @Test
+    public void testRolesTimeoutFailsLogin() {
+        // GIVEN: Keycloak not responding in time
+        when(keycloakAdmin.getUserRoles(USER_ID)).thenAnswer(invocation -> {
+            Thread.sleep(10 * TIMEOUT);
+            return new HashSet<>();
+        });
+        when(chatService.isChatEnabled()).thenReturn(false);
+
+        // WHEN: logging in
+        LoginPipeline.Result result = loginPipeline.login(USER_ID, credentials);
+
+        // THEN: login times out (i.e. 503 at the login endpoint) and the timeout is counted
+        assertEquals(LoginPipeline.Status.TIMEOUT, result.getStatus());
+        assertNull(result.getFrontEndUser());
+        assertEquals(1L, getMetric("login.roles.timeouts"));
+    }
+
+    @Test
+    public void testSaturatedLookupsDoNotFailLogin() throws Exception {
+        // GIVEN: lookup pool and its queue occupied by other logins
+        loginPipeline.shutdown();
+        ReflectionTestUtils.setField(loginPipeline, "poolSize", 1);
+        ReflectionTestUtils.setField(loginPipeline, "queueSize", 1);
+        loginPipeline.init();
+        ExecutorService lookupExecutor = (ExecutorService) ReflectionTestUtils.getField(loginPipeline, "lookupExecutor");
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++)
+            lookupExecutor.submit(() -> release.await(10, TimeUnit.SECONDS));
+        when(keycloakAdmin.getUserRoles(USER_ID)).thenReturn(new HashSet<>(Collections.singletonList("nimble_user")));
+        when(chatService.isChatEnabled()).thenReturn(false);
+
+        try {
+            // WHEN: logging in
+            LoginPipeline.Result result = loginPipeline.login(USER_ID, credentials);
+
+            // THEN: lookups run on the calling thread instead of failing the login
+            assertEquals(LoginPipeline.Status.SUCCESS, result.getStatus());
+            assertEquals(0L, getMetric("login.roles.timeouts"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testChatFailureDoesNotFailLogin() throws Exception {
+        // GIVEN: Rocket.Chat not reachable
+        when(keycloakAdmin.getUserRoles(USER_ID)).thenReturn(new HashSet<>(Collections.singletonList("nimble_user")));
+        when(chatService.isChatEnabled()).thenReturn(true);
+        when(chatService.loginUser(any(Credentials.class))).thenThrow(new IOException("Connection refused"));
+
+        // WHEN: logging in
+        LoginPipeline.Result result = loginPipeline.login(USER_ID, credentials);
+
+        // THEN: user is logged in without chat session
+        assertEquals(LoginPipeline.Status.SUCCESS, result.getStatus());
+        assertNotNull(result.getFrontEndUser());
+        assertNull(result.getFrontEndUser().getRocketChatToken());
+    }
+
+    @Test
+    public void testChatSessionOfDeletedUserIsDiscarded() throws Exception {
+        // GIVEN: deleted user still having a chat user
+        when(keycloakAdmin.getUserRoles(USER_ID)).thenReturn(new HashSet<>(Collections.singletonList(KeycloakAdmin.NIMBLE_DELETED_USER)));
+        when(chatService.isChatEnabled()).thenReturn(true);
+        RocketChatLoginResponseData data = new RocketChatLoginResponseData();
+        data.setUserId("chat-user");
+        data.setAuthToken("chat-token");
+        RocketChatLoginResponse chatLogin = new RocketChatLoginResponse();
+        chatLogin.setData(data);
+        when(chatService.loginUser(any(Credentials.class))).thenReturn(chatLogin);
+
+        // WHEN: logging in
+        LoginPipeline.Result result = loginPipeline.login(USER_ID, credentials);
+
+        // THEN: login is refused and the chat session is logged out
+        assertEquals(LoginPipeline.Status.USER_DELETED, result.getStatus());
+        verify(chatService, timeout(1000)).logout("chat-user", "chat-token");
+    }
+
+    private Object getMetric(String name) {
+        return loginPipeline.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -5,6 +5,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import eu.nimble.core.infrastructure.identity.IdentityServiceApplication;
 import eu.nimble.core.infrastructure.identity.config.DefaultTestConfiguration;
+import eu.nimble.core.infrastructure.identity.constants.GlobalConstants;
 import eu.nimble.core.infrastructure.identity.entity.UaaUser;
 import eu.nimble.core.infrastructure.identity.entity.dto.*;
 import eu.nimble.core.infrastructure.identity.repository.*;
@@ -110,6 +111,17 @@ public class AdminControllerTests {
         assertEquals(1, this.paymentMeansRepository.count());
         assertEquals(1, this.documentReferenceRepository.count());
 
+        // check materialized verification state of newly registered company
+        this.mockMvc.perform(get("/admin/unverified_companies")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements", is(1)))
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(companyRegistration.getCompanyID().toString())));
+        this.mockMvc.perform(get("/admin/verified_companies")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements", is(0)));
+
 //        // WHEN: deleting company
 //        this.mockMvc.perform(delete("/admin/delete_company/" + companyRegistration.getCompanyID())
 //                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
@@ -126,4 +138,59 @@ public class AdminControllerTests {
 //        assertEquals(1, this.partyRepository.count());
 //        assertEquals(1, this.personRepository.count());
     }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void testPageCompanies() throws Exception {
+
+        // GIVEN: companies registered in non-alphabetical order, all sorted before other test companies
+        Long charlieId = registerCompany("Charlie", "charlie");
+        Long alphaId = registerCompany("Alpha", "alpha");
+        Long bravoId = registerCompany("Bravo", "bravo");
+
+        // WHEN/THEN: pages are sorted by name
+        this.mockMvc.perform(get("/admin/unverified_companies?page=1&size=2&sortBy=" + GlobalConstants.PARTY_NAME_STRING + "&orderBy=" + GlobalConstants.ASCENDING_STRING)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()", is(2)))
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(alphaId.toString())))
+                .andExpect(jsonPath("$.content[1].partyIdentification[0].id", is(bravoId.toString())));
+        this.mockMvc.perform(get("/admin/unverified_companies?page=2&size=2")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(charlieId.toString())));
+
+        // WHEN/THEN: keyset pages continue after the given company
+        this.mockMvc.perform(get("/admin/unverified_companies?size=2&after=" + bravoId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(charlieId.toString())));
+        this.mockMvc.perform(get("/admin/unverified_companies?size=2&orderBy=" + GlobalConstants.DESCENDING_STRING + "&after=" + charlieId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()", is(2)))
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(bravoId.toString())))
+                .andExpect(jsonPath("$.content[1].partyIdentification[0].id", is(alphaId.toString())));
+
+        // WHEN/THEN: unknown keyset ids fall back to offset paging
+        this.mockMvc.perform(get("/admin/unverified_companies?size=1&after=-1")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()", is(1)))
+                .andExpect(jsonPath("$.content[0].partyIdentification[0].id", is(alphaId.toString())));
+    }
+
+    private Long registerCompany(String legalName, String username) throws Exception {
+        PersonType person = personRepository.save(new PersonType());
+        uaaUserRepository.save(new UaaUser(username, person, username + "ExternalID"));
+        CompanyRegistration companyRegistration = createCompanyRegistration(legalName, person);
+
+        Gson gson = new GsonBuilder().setDateFormat(JSON_DATE_FORMAT).create();
+        String responseAsString = this.mockMvc.perform(post("/register/company").contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN")
+                .content(gson.toJson(companyRegistration)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(responseAsString, CompanyRegistration.class).getCompanyID();
+    }
 }
@@ -10,11 +10,16 @@ import eu.nimble.core.infrastructure.identity.entity.NegotiationSettings;
 import eu.nimble.core.infrastructure.identity.entity.dto.*;
 import eu.nimble.core.infrastructure.identity.repository.NegotiationSettingsRepository;
 import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
+import eu.nimble.core.infrastructure.identity.repository.PersonRepository;
 import eu.nimble.core.infrastructure.identity.service.IdentityService;
 import eu.nimble.core.infrastructure.identity.utils.UblAdapter;
 import eu.nimble.core.infrastructure.identity.utils.UblUtils;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.ContactType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PartyType;
+import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.QualityIndicatorType;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.ClassRule;
 import org.junit.FixMethodOrder;
 import org.junit.Ignore;
@@ -30,10 +35,12 @@ import org.springframework.kafka.test.rule.KafkaEmbedded;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import javax.persistence.EntityManagerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -62,10 +69,17 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @FixMethodOrder
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
 @Import(DefaultTestConfiguration.class)
+@TestPropertySource(properties = "nimble.indexing.outbox.interval=3600000") // no background queries while counting statements
 public class CompanySettingsControllerTests {
 
     private static final String DATE_FORMAT = "yyyy-MM-dd";
 
+    // members of the company in the statement count test, fetched in a single batch if not loaded one by one
+    private static final int MEMBER_COUNT = 20;
+
+    // upper bound of statements of a cold settings request, independent of the number of members
+    private static final long MAX_SETTINGS_STATEMENTS = 50;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -75,6 +89,12 @@ public class CompanySettingsControllerTests {
     @Autowired
     private PartyRepository partyRepository;
 
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @Autowired
     private NegotiationSettingsRepository negotiationSettingsRepository;
 
@@ -497,4 +517,52 @@ public class CompanySettingsControllerTests {
         negotiationSettings.setCompany(company);
         return negotiationSettings;
     }
+
+    @Test
+    public void testSettingsAreLoadedWithFixedNumberOfStatements() throws Exception {
+
+        // GIVEN: existing company with a single member
+        PartyType company = identityService.getCompanyOfUser(null).get();
+        company.getPerson().add(createMember(0));
+        partyRepository.save(company);
+        UblUtils.setID(company, company.getHjid().toString());
+        partyRepository.save(company);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        long statementsForSingleMember = countStatementsOfSettingsRequest(statistics, company);
+        assertTrue("Settings loaded with " + statementsForSingleMember + " statements",
+                statementsForSingleMember <= MAX_SETTINGS_STATEMENTS);
+
+        // WHEN: adding further members
+        company = partyRepository.findByHjid(company.getHjid()).get(0);
+        for (int i = 1; i < MEMBER_COUNT; i++)
+            company.getPerson().add(createMember(i));
+        partyRepository.save(company);
+
+        // THEN: settings are loaded with the same number of statements
+        assertEquals(statementsForSingleMember, countStatementsOfSettingsRequest(statistics, company));
+    }
+
+    private PersonType createMember(int index) {
+        PersonType member = new PersonType();
+        member.setFirstName("Member");
+        member.setFamilyName(String.valueOf(index));
+        ContactType contact = new ContactType();
+        contact.setElectronicMail("member" + index + "@example.com");
+        contact.setTelephone("+43 " + index);
+        member.setContact(contact);
+        member.getRole().add(index % 2 == 0 ? "sales_officer" : "purchaser");
+        return personRepository.save(member);
+    }
+
+    private long countStatementsOfSettingsRequest(Statistics statistics, PartyType company) throws Exception {
+        // count statements of a cold request, independent of the second level cache
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+        this.mockMvc.perform(get("/company-settings/" + company.getHjid()))
+                .andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
 }
@@ -11,6 +11,7 @@ import eu.nimble.core.infrastructure.identity.repository.PartyRepository;
 import eu.nimble.core.infrastructure.identity.repository.PersonRepository;
 import eu.nimble.core.infrastructure.identity.repository.QualifyingPartyRepository;
 import eu.nimble.core.infrastructure.identity.repository.UaaUserRepository;
+import eu.nimble.core.infrastructure.identity.utils.JsonStreaming;
 import eu.nimble.service.model.ubl.commonaggregatecomponents.PersonType;
 import org.hamcrest.Matchers;
 import org.junit.ClassRule;
@@ -28,6 +29,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -35,6 +37,8 @@ import java.text.SimpleDateFormat;
 import static eu.nimble.core.infrastructure.identity.TestUtils.JSON_DATE_FORMAT;
 import static eu.nimble.core.infrastructure.identity.TestUtils.createCompanyRegistration;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -102,6 +106,30 @@ public class PartyControllerTests {
                 .andExpect(jsonPath("$.length()", is(1)))
                 .andExpect(jsonPath("$[0].names.en", is("company1")))
                 .andExpect(jsonPath("$[0].companyID", is(registration1.getCompanyID().toString())));
+
+        // fetch sorted list
+        this.mockMvc.perform(get("/party/all?dateSortAsc=false").contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)));
+
+        // fetch deleted parties
+        this.mockMvc.perform(get("/party/all?deleted=true").contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(0)));
+
+        // stream list as newline delimited JSON
+        MvcResult streamResult = this.mockMvc.perform(get("/party/all?stream=true&exclude=" + registration2.getCompanyID())
+                .header(HttpHeaders.AUTHORIZATION, "Bearer DUMMY_TOKEN"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String[] lines = this.mockMvc.perform(asyncDispatch(streamResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(JsonStreaming.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(1, lines.length);
+        assertEquals(registration1.getCompanyID().toString(), objectMapper.readTree(lines[0]).get("companyID").asText());
     }
 
     private CompanyRegistration registerCompany(String legalName) throws Exception {